@@ -2,6 +2,8 @@ package com.ecommerce.controller;
 
 import com.ecommerce.model.Cart;
 import com.ecommerce.model.Order;
+import com.ecommerce.service.CartOperation;
+import com.ecommerce.service.CartUpdateResult;
 import com.ecommerce.service.OrderService;
 import org.springframework.web.bind.annotation.*;
 
@@ -13,6 +15,8 @@ import java.util.HashMap;
 @RequestMapping("/api/orders")
 public class OrderController {
     
+    private static final int MAX_CART_OPERATIONS = 1000;
+    
     private OrderService orderService = OrderService.getInstance();
     private OrderService service;
     
@@ -72,6 +76,20 @@ public class OrderController {
         orderService.removeFromCart(cartId, productId);
     }
     
+    /**
+     * Cart edit in one request: a list of ADD / SET / REMOVE operations applied to
+     * the cart all or nothing. Returns the cart and its totals after the edit.
+     */
+    @PostMapping("/cart/{cartId}/batch")
+    public CartUpdateResult updateCart(
+            @PathVariable Long cartId,
+            @RequestBody List<CartOperation> operations) {
+        if (operations.size() > MAX_CART_OPERATIONS) {
+            throw new IllegalArgumentException("At most " + MAX_CART_OPERATIONS + " operations per request");
+        }
+        return orderService.updateCart(cartId, operations);
+    }
+    
     @PostMapping
     public Order createOrder(@RequestBody Map<String, Object> request) {
         Long userId = Long.parseLong(request.get("userId").toString());
@@ -191,6 +209,11 @@ public class OrderController {
         return requestStats;
     }
     
+    @GetMapping("/debug/carts")
+    public Map<String, Object> getCartStats() {
+        return orderService.getCartStats();
+    }
+    
     @PostMapping("/admin/reset")
     public String resetAll() {
         orderService.resetCounters();
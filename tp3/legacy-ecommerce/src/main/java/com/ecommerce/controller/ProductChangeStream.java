@@ -0,0 +1,250 @@
+package com.ecommerce.controller;
+
+import com.ecommerce.repository.ProductChanges;
+import com.ecommerce.repository.ProductRepository;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes catalog changes to Server-Sent Events subscribers. A single daemon thread
+ * waits on the change log and turns the changes into events, which it queues to
+ * every subscriber from its own position; it never writes to a connection itself.
+ * Each subscriber's queue is bounded and drained by a sender thread, so a slow
+ * client only slows down its own stream, and one whose oldest queued event has
+ * waited longer than MAX_LAG_MILLIS is dropped: it reconnects and resumes from
+ * there. Event ids are "epoch-sequence": a client reconnecting with Last-Event-ID
+ * resumes where it stopped, or receives a "reset" event when the log no longer
+ * covers it.
+ */
+class ProductChangeStream {
+
+    private static final long POLL_MILLIS = 1_000;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long MAX_LAG_MILLIS = 30_000;
+    private static final int BATCH = 1000;
+    private static final int MAX_QUEUED = 4 * BATCH;
+
+    private final ProductRepository repository;
+    private final ProductJsonCache jsonCache;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // a thread per subscriber with queued events: a send blocked on a slow client holds only its own
+    private final ExecutorService senders = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "product-change-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ProductChangeStream(ProductRepository repository, ProductJsonCache jsonCache) {
+        this.repository = repository;
+        this.jsonCache = jsonCache;
+        Thread dispatcher = new Thread(this::dispatch, "product-change-stream");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(emitter, position(lastEventId));
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(error -> close(subscriber));
+        subscribers.add(subscriber);
+        wakeUp();
+        return emitter;
+    }
+
+    /* Last-Event-ID from another epoch becomes an impossible position, hence a reset. */
+    private long position(String lastEventId) {
+        if (lastEventId != null) {
+            int dash = lastEventId.indexOf('-');
+            try {
+                if (dash > 0 && Long.parseLong(lastEventId.substring(0, dash)) == repository.getChangeEpoch()) {
+                    return Long.parseLong(lastEventId.substring(dash + 1));
+                }
+                return -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return repository.getChangeSequence();
+    }
+
+    private void dispatch() {
+        long lastHeartbeat = System.currentTimeMillis();
+        while (true) {
+            try {
+                // subscribers without room for a batch are skipped until their sender catches up
+                long since = Long.MAX_VALUE;
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.hasRoom()) {
+                        since = Math.min(since, subscriber.position);
+                    }
+                }
+                if (since == Long.MAX_VALUE) {
+                    synchronized (this) {
+                        wait(subscribers.isEmpty() ? HEARTBEAT_MILLIS : POLL_MILLIS);
+                    }
+                } else {
+                    // bounded wait, so that a subscriber resuming from an older position is served promptly
+                    repository.awaitChanges(since, POLL_MILLIS);
+                }
+                if (subscribers.isEmpty()) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                boolean heartbeat = now - lastHeartbeat >= HEARTBEAT_MILLIS;
+                if (heartbeat) {
+                    lastHeartbeat = now;
+                }
+                deliver(heartbeat, now);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("Change stream error: " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Subscribers at the same position share the delta read of this pass; idle
+     * connections get a comment now and then so dead clients are detected. A
+     * subscriber is fed a batch at a time while its queue has room for one.
+     */
+    private void deliver(boolean heartbeat, long now) {
+        long sequence = repository.getChangeSequence();
+        Map<Long, ProductChanges> pass = new HashMap<>();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.lagMillis(now) > MAX_LAG_MILLIS) {
+                drop(subscriber, new IOException("Change stream subscriber fell behind"));
+                continue;
+            }
+            if (subscriber.position == sequence) {
+                if (heartbeat && subscriber.queue.isEmpty()) {
+                    subscriber.enqueue(SseEmitter.event().comment("heartbeat"), now);
+                }
+            } else {
+                ProductChanges changes;
+                do {
+                    if (!subscriber.hasRoom()) {
+                        break;
+                    }
+                    changes = pass.computeIfAbsent(subscriber.position,
+                            position -> repository.findChanges(null, position, BATCH));
+                    enqueue(subscriber, changes, now);
+                } while (changes.hasMore);
+            }
+            schedule(subscriber);
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, ProductChanges changes, long now) {
+        String epoch = changes.epoch + "-";
+        if (changes.reset) {
+            subscriber.enqueue(SseEmitter.event()
+                    .id(epoch + changes.sequence)
+                    .name("reset")
+                    .data("{\"sequence\":" + changes.sequence + "}"), now);
+        }
+        for (ProductChanges.Item item : changes.changes) {
+            subscriber.enqueue(SseEmitter.event()
+                    .id(epoch + item.sequence)
+                    .name(item.type)
+                    .data(new String(jsonCache.serialize(item), StandardCharsets.UTF_8)), now);
+        }
+        subscriber.position = changes.sequence;
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    /* Sends until the queue is empty; the flag is cleared and checked again so no event is left behind. */
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                Queued next = subscriber.queue.poll();
+                if (next == null) {
+                    subscriber.draining.set(false);
+                    if (subscriber.queue.isEmpty() || !subscriber.draining.compareAndSet(false, true)) {
+                        break;
+                    }
+                    continue;
+                }
+                subscriber.emitter.send(next.event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            drop(subscriber, e);
+            return;
+        }
+        wakeUp();
+    }
+
+    /*
+     * Completing the emitter waits for a send in progress, so it is left to a
+     * sender thread rather than done by the dispatcher.
+     */
+    private void drop(Subscriber subscriber, Throwable error) {
+        close(subscriber);
+        senders.execute(() -> subscriber.emitter.completeWithError(error));
+    }
+
+    private void close(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.queue.clear();
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    private static class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<Queued> queue = new ArrayBlockingQueue<>(MAX_QUEUED);
+        final AtomicBoolean draining = new AtomicBoolean();
+        // next change to queue; only the dispatcher moves it
+        volatile long position;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        /* Room for a full batch and its reset event. */
+        boolean hasRoom() {
+            return queue.remainingCapacity() > BATCH;
+        }
+
+        /* Only the dispatcher adds, and only after checking hasRoom(), so this never fails. */
+        void enqueue(SseEmitter.SseEventBuilder event, long now) {
+            queue.offer(new Queued(event, now));
+        }
+
+        long lagMillis(long now) {
+            Queued oldest = queue.peek();
+            return oldest == null ? 0 : now - oldest.queuedAt;
+        }
+    }
+
+    private static class Queued {
+        final SseEmitter.SseEventBuilder event;
+        final long queuedAt;
+
+        Queued(SseEmitter.SseEventBuilder event, long queuedAt) {
+            this.event = event;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
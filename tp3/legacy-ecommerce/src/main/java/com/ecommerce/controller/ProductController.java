@@ -1,51 +1,249 @@
 package com.ecommerce.controller;
 
 import com.ecommerce.model.Product;
+import com.ecommerce.repository.FeaturedFeed;
+import com.ecommerce.repository.ProductChanges;
 import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.ProductVersions;
+import com.ecommerce.repository.StockUpdate;
+import com.ecommerce.repository.StockUpdateResult;
+import com.ecommerce.search.InventoryValuation;
+import com.ecommerce.search.ProductAutocomplete;
+import com.ecommerce.search.ProductFilter;
+import com.ecommerce.search.ProductFilterResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Date;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
     
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int NDJSON_FLUSH_EVERY = 256;
+    private static final int MAX_BATCH_SIZE = 10000;
+    private static final int MAX_STOCK_UPDATES = 50000;
+    
     private ProductRepository repository = ProductRepository.getInstance();
     private ProductRepository repo;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    private ProductJsonCache jsonCache;
+    private ProductChangeStream changeStream;
+    private volatile FeaturedJson featuredJson;
+    
     public int requestCount = 0;
     
+    @PostConstruct
+    void initJsonCache() {
+        jsonCache = new ProductJsonCache(objectMapper, repository);
+        changeStream = new ProductChangeStream(repository, jsonCache);
+    }
+    
+    /**
+     * Whole catalogue as one JSON array, streamed from a findAll snapshot.
+     */
     @GetMapping
-    public List<Product> getAllProducts() {
+    public ResponseEntity<StreamingResponseBody> getAllProducts(WebRequest request) {
         requestCount++;
         System.out.println("Getting all products - count: " + requestCount);
-        return repository.findAll();
+        ProductVersions.Version version = repository.getCatalogVersion();
+        if (request.checkNotModified(version.getETag(), version.lastModified)) {
+            return null;
+        }
+        List<Product> products = repository.findAll();
+        StreamingResponseBody body = out -> jsonCache.writeArray(products, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+    
+    @GetMapping(params = "limit")
+    public ProductPage getProductPage(@RequestParam int limit,
+                                      @RequestParam(required = false) String cursor) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        
+        List<Product> items = repository.findPage(ProductPage.decodeCursor(cursor), limit);
+        String nextCursor = null;
+        if (items.size() == limit) {
+            nextCursor = ProductPage.encodeCursor(items.get(items.size() - 1).id);
+        }
+        return new ProductPage(items, nextCursor);
+    }
+    
+    @GetMapping(params = "ids")
+    public ResponseEntity<byte[]> getProductsByIds(@RequestParam List<Long> ids) {
+        return productBatch(ids);
+    }
+    
+    /**
+     * Same as GET ?ids= for id lists too long for a query string.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<byte[]> getProductsBatch(@RequestBody List<Long> ids) {
+        return productBatch(ids);
+    }
+    
+    private ResponseEntity<byte[]> productBatch(List<Long> ids) {
+        Set<Long> unique = new LinkedHashSet<>(ids);
+        unique.remove(null);
+        if (unique.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " ids per request");
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(jsonCache.jsonBatch(unique));
+    }
+    
+    @GetMapping(produces = "application/x-ndjson")
+    public StreamingResponseBody streamAllProducts() {
+        return out -> {
+            int written = 0;
+            for (Product p : repository.iterateAll()) {
+                out.write(jsonCache.json(p));
+                out.write('\n');
+                if (++written % NDJSON_FLUSH_EVERY == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        };
+    }
+    
+    /**
+     * Home page feed. The encoded list is kept until a featured product changes.
+     */
+    @GetMapping("/featured")
+    public ResponseEntity<byte[]> getFeaturedProducts(WebRequest request) {
+        FeaturedFeed.Snapshot feed = repository.findFeatured();
+        if (request.checkNotModified(feed.getETag())) {
+            return null;
+        }
+        FeaturedJson cached = featuredJson;
+        if (cached == null || cached.version != feed.version) {
+            cached = new FeaturedJson(feed.version, jsonCache.jsonArray(feed.products));
+            featuredJson = cached;
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cached.json);
     }
     
     @GetMapping("/{id}")
-    public Product getProduct(@PathVariable Long id) {
+    public ResponseEntity<byte[]> getProduct(@PathVariable Long id, WebRequest request,
+                                             @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ProductVersions.Version version = repository.getVersion(id);
+        if (version != null && request.checkNotModified(eTag(version, gzip), version.lastModified)) {
+            return null;
+        }
         Product p = repository.findById(id);
         
-        if (p != null) {
-            p.applySeasonalDiscount();
+        if (p == null || version == null) {
+            return null;
         }
         
-        return p;
+        Product discounted = p.copy();
+        discounted.applySeasonalDiscount();
+        if (discounted.price != p.price) {
+            // discounted view, not the stored product: skip the cache
+            return productJson(new ProductJsonCache.Entry(version.version, jsonCache.serialize(discounted)), version, gzip);
+        }
+        return productJson(jsonCache.get(id), version, gzip);
     }
     
     @GetMapping("/get/{id}")
-    public Product getProductById(@PathVariable Long id) {
-        return repository.findById(id);
+    public ResponseEntity<byte[]> getProductById(@PathVariable Long id,
+                                                 @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding) {
+        ProductVersions.Version version = repository.getVersion(id);
+        return version == null ? null : productJson(jsonCache.get(id), version, acceptsGzip(acceptEncoding));
+    }
+    
+    /*
+     * The gzip encoding is another representation of the product: it has its own
+     * ETag, and caches are told that the response depends on Accept-Encoding.
+     */
+    private ResponseEntity<byte[]> productJson(ProductJsonCache.Entry entry, ProductVersions.Version version, boolean gzip) {
+        if (entry == null) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .eTag(eTag(version, gzip));
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.gzip());
+        }
+        return response.body(entry.json);
+    }
+    
+    private static String eTag(ProductVersions.Version version, boolean gzip) {
+        String eTag = version.getETag();
+        return gzip ? eTag.substring(0, eTag.length() - 1) + "-gzip\"" : eTag;
+    }
+    
+    /*
+     * True when gzip (or "*" without a gzip entry) is listed with a non-zero
+     * q-value, e.g. "gzip, deflate" or "br;q=1.0, gzip;q=0.8" but not "gzip;q=0".
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean anyAccepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                return q > 0;
+            }
+            if (name.equals("*")) {
+                anyAccepted = q > 0;
+            }
+        }
+        return anyAccepted;
     }
     
     @GetMapping("/category/{category}")
-    public List<Product> getProductsByCategory(@PathVariable String category) {
-        List<Product> products = repository.findByCategory(category);
+    public List<Product> getProductsByCategory(@PathVariable String category, WebRequest request) {
+        ProductVersions.Version version = repository.getCatalogVersion();
+        if (request.checkNotModified(version.getETag(), version.lastModified)) {
+            return null;
+        }
+        List<Product> products = new ArrayList<>(repository.findByCategory(category));
         
-        for (Product p : products) {
+        for (int i = 0; i < products.size(); i++) {
+            Product p = products.get(i);
             if (p.price > 1000) {
-                p.description = p.description + " [PREMIUM]";
+                // labelled view, not the stored product
+                Product premium = p.copy();
+                premium.description = p.description + " [PREMIUM]";
+                products.set(i, premium);
             }
         }
         
@@ -76,10 +274,12 @@ public class ProductController {
             return repository.save(product);
         }
         
-        existing.name = product.name;
-        existing.price = product.price;
+        // stored products are shared with readers: change a copy
+        Product updated = existing.copy();
+        updated.name = product.name;
+        updated.price = product.price;
 
-        return repository.save(existing);
+        return repository.save(updated);
     }
     
     @PostMapping("/{id}/update")
@@ -102,48 +302,129 @@ public class ProductController {
     
     @PostMapping("/{id}/stock")
     public Product updateStock(@PathVariable Long id, @RequestParam int quantity) {
-        Product product = repository.findById(id);
-        if (product != null) {
-            product.setStock(quantity);
-            
-            if (quantity == 0) {
-                product.active = false;
-            } else {
-                product.active = true;
-            }
-            
-            return repository.save(product);
+        // set under the product's lock like addStock; the active flag follows the new stock
+        StockUpdateResult result = repository.updateStock(Collections.singletonList(new StockUpdate(id, quantity, null)));
+        String status = result.items.get(0).status;
+        if (StockUpdateResult.NOT_FOUND.equals(status)) {
+            return null;
+        }
+        if (!StockUpdateResult.UPDATED.equals(status)) {
+            throw new IllegalArgumentException("Invalid stock quantity: " + quantity);
         }
-        return null;
+        return repository.findById(id);
     }
     
     @PostMapping("/{id}/addStock")
     public void addStock(@PathVariable Long id, @RequestParam int qty) {
-        Product product = repository.findById(id);
-        if (product == null) {
+        // read-modify-write under the product's lock, so concurrent reservations are not lost
+        StockUpdateResult result = repository.updateStock(Collections.singletonList(new StockUpdate(id, null, qty)));
+        if (StockUpdateResult.NOT_FOUND.equals(result.items.get(0).status)) {
+            throw new RuntimeException("Product not found");
+        }
+    }
+    
+    /**
+     * Switches a product in or out of hot-SKU mode (striped stock counter) ahead of
+     * a flash sale.
+     */
+    @PostMapping("/{id}/hot")
+    public boolean setHotStock(@PathVariable Long id, @RequestParam boolean enabled) {
+        if (!repository.setHotStock(id, enabled)) {
             throw new RuntimeException("Product not found");
         }
-        product.stock = product.stock + qty;
-        repository.save(product);
+        return repository.isHotStock(id);
+    }
+    
+    /**
+     * Delta sync: the products changed after {@code since} (one entry per product,
+     * with its current state) and the sequence to pass on the next call.
+     */
+    @GetMapping("/changes")
+    public ProductChanges getChanges(@RequestParam long since,
+                                     @RequestParam(required = false) Long epoch,
+                                     @RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return repository.findChanges(epoch, since, limit);
+    }
+    
+    @GetMapping(value = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeStream.subscribe(lastEventId);
+    }
+    
+    /**
+     * Warehouse sync: absolute ({@code quantity}) or relative ({@code delta}) stock
+     * changes for many products, applied in one batched pass.
+     */
+    @PostMapping("/stock/bulk")
+    public StockUpdateResult updateStockBulk(@RequestBody List<StockUpdate> updates) {
+        if (updates.size() > MAX_STOCK_UPDATES) {
+            throw new IllegalArgumentException("At most " + MAX_STOCK_UPDATES + " updates per request");
+        }
+        StockUpdateResult result = repository.updateStock(updates);
+        System.out.println("Bulk stock update: " + result.updated + " updated, " + result.failed
+                + " failed in " + String.format("%.1f", result.elapsedMillis) + " ms ("
+                + result.updatesPerSecond + " updates/s)");
+        return result;
     }
     
     @GetMapping("/search")
-    public List<Product> search(@RequestParam(required = false) String query) {
+    public List<Product> search(@RequestParam(required = false) String query,
+                                @RequestParam(defaultValue = "50") int limit,
+                                @RequestParam(defaultValue = "false") boolean fuzzy) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
         if (query == null || query.isEmpty()) {
             return repository.findAll();
         }
         
-        List<Product> all = repository.findAll();
-        List<Product> results = new java.util.ArrayList<>();
-        
-        for (Product p : all) {
-            if (p.name.contains(query) ||
-                (p.description != null && p.description.contains(query))) {
-                results.add(p);
-            }
+        return repository.search(query, limit, fuzzy);
+    }
+    
+    @GetMapping("/autocomplete")
+    public List<ProductAutocomplete.Suggestion> autocomplete(@RequestParam String q,
+                                                            @RequestParam(defaultValue = "10") int limit) {
+        return repository.autocomplete(q, limit);
+    }
+    
+    @GetMapping("/filter")
+    public ProductFilterResult filter(
+            @RequestParam(required = false) String query,
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "false") boolean inStock,
+            @RequestParam(defaultValue = ProductFilter.SORT_RELEVANCE) String sort,
+            @RequestParam(defaultValue = "50") int limit) {
+        ProductFilter filter = new ProductFilter();
+        filter.query = query;
+        if (category != null) {
+            filter.categories.addAll(category);
         }
+        filter.minPrice = minPrice;
+        filter.maxPrice = maxPrice;
+        filter.inStockOnly = inStock;
+        filter.sort = sort;
+        filter.limit = limit;
         
-        return results;
+        return repository.filter(filter);
+    }
+    
+    @GetMapping("/inventory/valuation")
+    public InventoryValuation getInventoryValuation() {
+        return repository.inventoryValuation();
+    }
+    
+    @GetMapping("/low-stock")
+    public List<Product> getLowStock(@RequestParam(defaultValue = "5") int threshold,
+                                     @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return repository.findLowStock(threshold, limit);
     }
     
     @GetMapping("/{id}/details")
@@ -166,4 +447,21 @@ public class ProductController {
         }
         return "All products deleted";
     }
+    
+    /** Request validation (bad limit, cursor, filter...) is a client error. */
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String badRequest(IllegalArgumentException e) {
+        return e.getMessage();
+    }
+    
+    private static class FeaturedJson {
+        final long version;
+        final byte[] json;
+        
+        FeaturedJson(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
 }
@@ -0,0 +1,260 @@
+package com.ecommerce.controller;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductListener;
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.ProductVersions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoded JSON of each product (and its gzip variant, built on first use), so an
+ * unchanged product goes through Jackson once. Entries carry the product version
+ * they were built from: the version is read before the product, so an entry built
+ * while a write was in flight can only look older than it is and gets rebuilt.
+ * The listener drops entries as soon as the product changes.
+ *
+ * At most -Decommerce.jsonCache.maxEntries products (default 100000) are kept,
+ * least recently used first out. The LRU is split into segments by id, each
+ * under its own lock, so concurrent hits on different products rarely meet.
+ */
+public class ProductJsonCache implements ProductListener {
+
+    private static final int SEGMENTS = 16;
+
+    private final ObjectMapper objectMapper;
+    private final ProductRepository repository;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public ProductJsonCache(ObjectMapper objectMapper, ProductRepository repository) {
+        this(objectMapper, repository, Integer.getInteger("ecommerce.jsonCache.maxEntries", 100_000));
+    }
+
+    public ProductJsonCache(ObjectMapper objectMapper, ProductRepository repository, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("ecommerce.jsonCache.maxEntries must be positive");
+        }
+        this.objectMapper = objectMapper;
+        this.repository = repository;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS));
+        }
+        repository.addListener(this);
+    }
+
+    /**
+     * Cached encoding of the product, or null when it does not exist.
+     */
+    public Entry get(Long id) {
+        ProductVersions.Version version = repository.getVersion(id);
+        if (version == null) {
+            return null;
+        }
+        Entry entry = cached(id);
+        if (entry != null && entry.version == version.version) {
+            return entry;
+        }
+        Product product = repository.findById(id);
+        if (product == null) {
+            return null;
+        }
+        entry = new Entry(version.version, serialize(product));
+        store(id, entry);
+        return entry;
+    }
+
+    /**
+     * JSON of a product the caller already has: the cached encoding when it is
+     * current, otherwise the product serialized on the spot and not cached, so a
+     * pass over the whole catalogue does not push every other entry out.
+     */
+    public byte[] json(Product product) {
+        ProductVersions.Version version = repository.getVersion(product.id);
+        Entry entry = version == null ? null : cached(product.id);
+        return entry != null && entry.version == version.version ? entry.json : serialize(product);
+    }
+
+    /**
+     * JSON array of the given products, assembled from the cached encodings.
+     */
+    public byte[] jsonArray(Iterable<Product> products) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try {
+            writeArray(products, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the JSON array of the given products to {@code out} one product at a
+     * time, through json(Product): a full catalogue goes out without being held in
+     * memory and without evicting the cached entries.
+     */
+    public void writeArray(Iterable<Product> products, OutputStream out) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (Product product : products) {
+            if (!first) {
+                out.write(',');
+            }
+            out.write(json(product));
+            first = false;
+        }
+        out.write(']');
+    }
+
+    /**
+     * {@code [{"id":1,"found":true,"product":{...}},{"id":2,"found":false}]} in the
+     * order of {@code ids}. Versions are read first, then the products missing from
+     * the cache are fetched with a single repository call.
+     */
+    public byte[] jsonBatch(Collection<Long> ids) {
+        List<ProductVersions.Version> versions = new ArrayList<>(ids.size());
+        List<Long> misses = new ArrayList<>();
+        for (Long id : ids) {
+            ProductVersions.Version version = repository.getVersion(id);
+            versions.add(version);
+            Entry entry = cached(id);
+            if (version != null && (entry == null || entry.version != version.version)) {
+                misses.add(id);
+            }
+        }
+        Map<Long, Product> fetched = misses.isEmpty() ? null : repository.findAllById(misses);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        out.write('[');
+        int i = 0;
+        for (Long id : ids) {
+            ProductVersions.Version version = versions.get(i++);
+            Entry entry = version == null ? null : cached(id);
+            if (entry == null || entry.version != version.version) {
+                Product product = version == null || fetched == null ? null : fetched.get(id);
+                entry = product == null ? null : new Entry(version.version, serialize(product));
+                if (entry != null) {
+                    store(id, entry);
+                }
+            }
+            if (i > 1) {
+                out.write(',');
+            }
+            if (entry == null) {
+                writeAscii(out, "{\"id\":" + id + ",\"found\":false}");
+            } else {
+                writeAscii(out, "{\"id\":" + id + ",\"found\":true,\"product\":");
+                out.write(entry.json, 0, entry.json.length);
+                out.write('}');
+            }
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    public byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Cannot serialize " + value, e);
+        }
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        drop(product.id);
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        drop(product.id);
+    }
+
+    private Entry cached(Long id) {
+        return segment(id).get(id);
+    }
+
+    private void store(Long id, Entry entry) {
+        segment(id).put(id, entry);
+    }
+
+    private void drop(Long id) {
+        segment(id).remove(id);
+    }
+
+    private Segment segment(Long id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    /* One LRU slice: access-ordered, so the first entry is the least recently used one. */
+    private static final class Segment {
+        private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized Entry get(Long id) {
+            return entries.get(id);
+        }
+
+        synchronized void put(Long id, Entry entry) {
+            entries.put(id, entry);
+            if (entries.size() > maxEntries) {
+                Iterator<Long> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(Long id) {
+            entries.remove(id);
+        }
+    }
+
+    public static class Entry {
+        public final long version;
+        public final byte[] json;
+        private volatile byte[] gzip;
+
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        public byte[] gzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 32);
+                try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+                    zip.write(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                compressed = out.toByteArray();
+                gzip = compressed;
+            }
+            return compressed;
+        }
+    }
+}
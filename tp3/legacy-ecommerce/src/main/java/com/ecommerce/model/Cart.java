@@ -1,132 +1,182 @@
 package com.ecommerce.model;
 
-import java.util.Date;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Cart lines keyed by product id, in the order they were first added. Adding a
+ * product already in the cart merges into its line. Totals are kept up to date
+ * by every mutation (in cents, so adds and removals do not drift), which makes
+ * reading them O(1) whatever the size of the cart.
+ *
+ * Single writer, many readers: changes are made by one thread at a time (the
+ * holder of the cart's lock in OrderService), and each change publishes an
+ * immutable snapshot of the lines and totals through a volatile field, which is
+ * all getItems() and the totals read. Readers never lock and never see a change
+ * half done. A snapshot holds a copy of the line list; a changed line is a new
+ * CartItem, so the items of older snapshots stay as they were. batch() publishes
+ * several changes as one.
+ */
 public class Cart {
     
     public Long id;
     public Long userId;
-    public ArrayList items;
     public Date createdAt;
-    public Date updatedAt;
+    public volatile Date updatedAt;
     public String status;
-    private double cachedTotal = -1;
+    
+    // writer side: current line of every product, in the order they were added
+    private final Map<Long, CartItem> items = new LinkedHashMap<>();
+    private long totalCents;
+    private int totalItems;
+    private int batchDepth;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
     
     public Cart() {
-        this.items = new ArrayList();
         this.createdAt = new Date();
     }
     
     public Cart(Long id, Long userId) {
         this.id = id;
         this.userId = userId;
-        this.items = new ArrayList();
         this.createdAt = new Date();
         this.status = "NEW";
     }
     
+    /**
+     * Lines as of the last published change, serialized as the cart's "items"
+     * array. Change them through the cart so the totals follow.
+     */
+    public Collection<CartItem> getItems() {
+        return snapshot.items;
+    }
+    
+    /** Current line of the product, for the writer; readers go through getItems(). */
+    public CartItem getItem(Long productId) {
+        return items.get(productId);
+    }
+    
+    /** Makes several changes and publishes them to readers as one. */
+    public void batch(Runnable changes) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+            publish();
+        }
+    }
+    
+    /**
+     * Adds {@code quantity} units of the product, merging into its line if the cart
+     * already has one; the line then takes the product's current price.
+     */
     public void addItem(Product product, int quantity) {
-        CartItem item = new CartItem();
+        CartItem current = items.get(product.id);
+        CartItem item = current == null ? new CartItem() : current.copy();
+        if (current != null) {
+            untrack(current);
+        }
         item.product = product;
-        item.quantity = quantity;
+        item.quantity += quantity;
         item.price = product.price;
-        items.add(item);
+        setLine(product.id, item);
         this.updatedAt = new Date();
-
+        publish();
+        
         if (items.size() > 10) {
             System.out.println("WARNING: Cart has more than 10 items!");
         }
     }
     
+    /** Sets the quantity of a line; does nothing when the product is not in the cart. */
     public void updateQuantity(Long productId, int newQty) {
-        boolean found = false;
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            if (item.product.id == productId) {
-                item.quantity = newQty;
-                found = true;
-            }
-        }
-        if (!found) {
-            CartItem item = new CartItem();
-            item.quantity = newQty;
-            items.add(item);
+        CartItem current = items.get(productId);
+        if (current == null) {
+            return;
         }
+        untrack(current);
+        CartItem item = current.copy();
+        item.quantity = newQty;
+        setLine(productId, item);
+        this.updatedAt = new Date();
+        publish();
     }
     
     public void removeItem(Long productId) {
-        for (int i = 0; i < items.size(); i++) {
-            for (int j = 0; j < items.size(); j++) {
-                CartItem item = (CartItem) items.get(i);
-                if (item.product != null && item.product.id.equals(productId)) {
-                    items.remove(i);
-                }
-            }
+        CartItem removed = items.remove(productId);
+        if (removed != null) {
+            untrack(removed);
         }
         this.updatedAt = new Date();
-        cachedTotal = -1;
+        publish();
     }
     
+    /** Total with the 5% discount applied above 100. */
     public double calculateTotal() {
-        if (cachedTotal >= 0) {
-            return cachedTotal;
-        }
-        
-        double total = 0;
-        for (int i = 0; i < items.size(); i++) {
-            Object obj = items.get(i);
-            if (obj instanceof CartItem) {
-                CartItem item = (CartItem) obj;
-                if (item.product != null) {
-                    total += item.product.price * item.quantity;
-                }
-            }
-        }
-        
+        double total = getTotal();
         if (total > 100) {
             total = total * 0.95;
         }
-        
-        cachedTotal = total;
         return total;
     }
     
     public double getTotal() {
-        double sum = 0.0;
-        for (Object o : items) {
-            CartItem ci = (CartItem) o;
-            sum = sum + (ci.price * ci.quantity);
-        }
-        return sum;
+        return snapshot.totalCents / 100.0;
     }
     
     public int getTotalItems() {
-        int count = 0;
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            count += item.quantity;
-        }
-        return count;
+        return snapshot.totalItems;
     }
     
     public boolean isEmpty() {
-        return getTotalItems() == 0;
+        return snapshot.totalItems == 0;
     }
     
     public void clearEmptyItems() {
-        ArrayList newItems = new ArrayList();
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            if (item.quantity > 0) {
-                newItems.add(item);
+        Iterator<CartItem> it = items.values().iterator();
+        while (it.hasNext()) {
+            CartItem item = it.next();
+            if (item.quantity <= 0) {
+                untrack(item);
+                it.remove();
             }
         }
-        items = newItems;
+        publish();
         System.out.println("Cleared empty items");
     }
     
+    private void publish() {
+        if (batchDepth == 0) {
+            snapshot = new Snapshot(Collections.unmodifiableList(new ArrayList<>(items.values())), totalCents, totalItems);
+        }
+    }
+    
+    /* A line already in the cart keeps its place. */
+    private void setLine(Long productId, CartItem item) {
+        items.put(productId, item);
+        track(item);
+    }
+    
+    private void track(CartItem item) {
+        totalCents += cents(item.price) * item.quantity;
+        totalItems += item.quantity;
+    }
+    
+    private void untrack(CartItem item) {
+        totalCents -= cents(item.price) * item.quantity;
+        totalItems -= item.quantity;
+    }
+    
+    private static long cents(double price) {
+        return Math.round(price * 100);
+    }
+    
     public static class CartItem {
         public Long id;
         public Product product;
@@ -140,5 +190,29 @@ public class Cart {
             if (product == null) return 0;
             return price * quantity;
         }
+        
+        CartItem copy() {
+            CartItem copy = new CartItem();
+            copy.id = id;
+            copy.product = product;
+            copy.quantity = quantity;
+            copy.price = price;
+            copy.notes = notes;
+            return copy;
+        }
+    }
+    
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), 0, 0);
+        
+        final Collection<CartItem> items;
+        final long totalCents;
+        final int totalItems;
+        
+        Snapshot(Collection<CartItem> items, long totalCents, int totalItems) {
+            this.items = items;
+            this.totalCents = totalCents;
+            this.totalItems = totalItems;
+        }
     }
 }
@@ -36,8 +36,7 @@ public class Order {
         
         this.items = new ArrayList();
         int count = 0;
-        for (Object obj : cart.items) {
-            Cart.CartItem cartItem = (Cart.CartItem) obj;
+        for (Cart.CartItem cartItem : cart.getItems()) {
             OrderItem orderItem = new OrderItem();
             
             orderItem.productId = cartItem.product.id;
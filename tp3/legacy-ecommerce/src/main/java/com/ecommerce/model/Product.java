@@ -15,6 +15,7 @@ public class Product {
     public Date createdAt;
     private boolean active;
     public String status;
+    public boolean featured;
     
     public Product() {
     }
@@ -33,6 +34,22 @@ public class Product {
         this.status = "ACTIVE";
     }
     
+    /** Field by field copy, for views that must not change the stored product. */
+    public Product copy() {
+        Product copy = new Product();
+        copy.id = id;
+        copy.name = name;
+        copy.description = description;
+        copy.price = price;
+        copy.stock = stock;
+        copy.category = category;
+        copy.createdAt = createdAt;
+        copy.active = active;
+        copy.status = status;
+        copy.featured = featured;
+        return copy;
+    }
+    
     public void setPrice(double price) {
         this.price = price;
     }
@@ -45,7 +62,15 @@ public class Product {
         return active;
     }
     
-    public boolean checkAndDecrementStock(int qty) {
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+    
+    /**
+     * Atomic for this object only; catalog stock goes through
+     * ProductRepository.reserveStock, which also keeps indexes and the WAL in sync.
+     */
+    public synchronized boolean checkAndDecrementStock(int qty) {
         if (stock >= qty) {
             stock = stock - qty;
             return true;
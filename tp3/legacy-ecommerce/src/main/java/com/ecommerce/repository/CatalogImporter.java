@@ -0,0 +1,358 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk loader for the tp1 dataset format (semicolon separated, header line with
+ * id;name;category;price_eur_ttc;stock;...;is_featured;description;...). The file is memory
+ * mapped and cut into chunks on line boundaries; chunks are parsed in parallel
+ * straight from the mapped bytes and inserted into the repository in batches.
+ */
+public class CatalogImporter {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+
+    private final ProductRepository repository;
+    private final int parallelism;
+
+    private final Map<String, String> categories = new ConcurrentHashMap<>();
+
+    public CatalogImporter(ProductRepository repository) {
+        this(repository, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CatalogImporter(ProductRepository repository, int parallelism) {
+        this.repository = repository;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public ImportReport importFile(Path file) throws IOException {
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Columns columns = readHeader(channel, size);
+
+            long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                    Math.max(MIN_CHUNK_SIZE, (size - columns.dataStart) / (parallelism * 4L) + 1));
+            List<long[]> chunks = new ArrayList<>();
+            for (long start = columns.dataStart; start < size; start += chunkSize) {
+                chunks.add(new long[] {start, Math.min(size, start + chunkSize)});
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, chunks.size())));
+            try {
+                List<Future<long[]>> results = new ArrayList<>();
+                for (long[] chunk : chunks) {
+                    results.add(executor.submit(() -> parseChunk(channel, size, columns, chunk[0], chunk[1])));
+                }
+                long rows = 0;
+                long rejected = 0;
+                for (Future<long[]> result : results) {
+                    long[] counts = result.get();
+                    rows += counts[0];
+                    rejected += counts[1];
+                }
+                ImportReport report = new ImportReport(rows, rejected, (System.nanoTime() - startNanos) / 1_000_000);
+                System.out.println("Catalog import from " + file + ": " + report);
+                return report;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Catalog import interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Catalog import failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private Columns readHeader(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_LINE_LENGTH));
+        int end = 0;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        byte[] bytes = new byte[end];
+        buffer.get(bytes);
+        String header = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+
+        Map<String, Integer> indexByName = new HashMap<>();
+        String[] names = header.split(";", -1);
+        for (int i = 0; i < names.length; i++) {
+            indexByName.put(names[i].trim().toLowerCase(), i);
+        }
+        Columns columns = new Columns();
+        columns.count = names.length;
+        columns.dataStart = Math.min(size, end + 1L);
+        columns.id = indexByName.getOrDefault("id", -1);
+        columns.name = indexByName.getOrDefault("name", -1);
+        columns.category = indexByName.getOrDefault("category", -1);
+        columns.price = indexByName.getOrDefault("price_eur_ttc", indexByName.getOrDefault("price", -1));
+        columns.stock = indexByName.getOrDefault("stock", -1);
+        columns.featured = indexByName.getOrDefault("is_featured", -1);
+        columns.description = indexByName.getOrDefault("description", -1);
+        if (columns.name < 0 || columns.price < 0) {
+            throw new IOException("Catalog header must contain at least name and price_eur_ttc: " + header);
+        }
+        return columns;
+    }
+
+    /*
+     * A chunk owns every line that starts inside [start, end). Its mapping begins one
+     * byte early to know whether start is already a line start, and runs past end
+     * so that the last owned line can be read entirely.
+     */
+    private long[] parseChunk(FileChannel channel, long size, Columns columns, long start, long end) throws IOException {
+        long mapStart = Math.max(columns.dataStart, start - 1);
+        long mapEnd = Math.min(size, end + MAX_LINE_LENGTH);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = buffer.limit();
+        int owned = (int) (end - mapStart);
+        boolean reachesEof = mapEnd == size;
+
+        int pos = (int) (start - mapStart);
+        if (start > columns.dataStart) {
+            while (pos - 1 >= 0 && buffer.get(pos - 1) != '\n' && pos < limit) {
+                pos++;
+            }
+        }
+
+        int[] fieldStart = new int[columns.count];
+        int[] fieldEnd = new int[columns.count];
+        byte[] scratch = new byte[256];
+        ByteBuffer view = buffer.duplicate();
+        List<Product> batch = new ArrayList<>(BATCH_SIZE);
+        long rows = 0;
+        long rejected = 0;
+
+        while (pos < owned && pos < limit) {
+            int field = 0;
+            fieldStart[0] = pos;
+            byte b = 0;
+            while (pos < limit && (b = buffer.get(pos)) != '\n') {
+                if (b == ';') {
+                    if (field < columns.count) {
+                        fieldEnd[field] = pos;
+                    }
+                    field++;
+                    if (field < columns.count) {
+                        fieldStart[field] = pos + 1;
+                    }
+                }
+                pos++;
+            }
+            if (pos >= limit && !reachesEof) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes at offset " + (mapStart + fieldStart[0]));
+            }
+            int lineEnd = pos > fieldStart[0] && buffer.get(pos - 1) == '\r' ? pos - 1 : pos;
+            if (field < columns.count) {
+                fieldEnd[field] = lineEnd;
+            }
+            pos++;
+
+            if (lineEnd == fieldStart[0]) {
+                continue;
+            }
+            Product product = field + 1 < columns.count ? null : toProduct(buffer, view, columns, fieldStart, fieldEnd, scratch);
+            if (product == null) {
+                rejected++;
+                continue;
+            }
+            batch.add(product);
+            rows++;
+            if (batch.size() == BATCH_SIZE) {
+                repository.saveAll(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            repository.saveAll(batch);
+        }
+        return new long[] {rows, rejected};
+    }
+
+    private Product toProduct(MappedByteBuffer buffer, ByteBuffer view, Columns columns,
+                              int[] fieldStart, int[] fieldEnd, byte[] scratch) {
+        String name = string(view, fieldStart[columns.name], fieldEnd[columns.name], scratch);
+        double price = parseDecimal(buffer, fieldStart[columns.price], fieldEnd[columns.price]);
+        if (name.isEmpty() || Double.isNaN(price) || price < 0) {
+            return null;
+        }
+        int stock = 0;
+        if (columns.stock >= 0) {
+            long value = parseLong(buffer, fieldStart[columns.stock], fieldEnd[columns.stock]);
+            if (value == Long.MIN_VALUE || value < 0 || value > Integer.MAX_VALUE) {
+                return null;
+            }
+            stock = (int) value;
+        }
+
+        Product product = new Product(name, price, stock);
+        if (columns.id >= 0 && fieldEnd[columns.id] > fieldStart[columns.id]) {
+            long id = parseLong(buffer, fieldStart[columns.id], fieldEnd[columns.id]);
+            if (id == Long.MIN_VALUE) {
+                return null;
+            }
+            product.id = id;
+        }
+        if (columns.category >= 0) {
+            String category = string(view, fieldStart[columns.category], fieldEnd[columns.category], scratch);
+            product.category = category.isEmpty() ? null : categories.computeIfAbsent(category, c -> c);
+        }
+        if (columns.featured >= 0) {
+            product.featured = parseBoolean(buffer, fieldStart[columns.featured], fieldEnd[columns.featured]);
+        }
+        if (columns.description >= 0) {
+            product.description = string(view, fieldStart[columns.description], fieldEnd[columns.description], scratch);
+        }
+        product.createdAt = new Date();
+        return product;
+    }
+
+    private static String string(ByteBuffer view, int from, int to, byte[] scratch) {
+        int length = to - from;
+        byte[] target = length <= scratch.length ? scratch : new byte[length];
+        view.position(from);
+        view.get(target, 0, length);
+        return new String(target, 0, length, StandardCharsets.UTF_8).trim();
+    }
+
+    /** "True", "true", "1", "yes"; anything else is false. */
+    private static boolean parseBoolean(MappedByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        if (from == to) {
+            return false;
+        }
+        byte first = buffer.get(from);
+        return first == 'T' || first == 't' || first == 'Y' || first == 'y' || first == '1';
+    }
+
+    /** Returns Long.MIN_VALUE when the field is not a plain integer. */
+    private static long parseLong(MappedByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        if (from == to) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = buffer.get(from) == '-';
+        if (negative) {
+            from++;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /*
+     * Accepts "16.27" and "16,27". mantissa / 10^scale is correctly rounded as long
+     * as both are exact doubles, which covers any realistic price.
+     */
+    private static double parseDecimal(MappedByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        if (from == to) {
+            return Double.NaN;
+        }
+        boolean negative = buffer.get(from) == '-';
+        if (negative) {
+            from++;
+        }
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if ((b == '.' || b == ',') && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || ++digits > 15) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + digit;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = scale > 0 ? mantissa / Math.pow(10, scale) : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static class Columns {
+        int count;
+        long dataStart;
+        int id;
+        int name;
+        int category;
+        int price;
+        int stock;
+        int featured;
+        int description;
+    }
+
+    public static class ImportReport {
+        public final long rows;
+        public final long rejected;
+        public final long elapsedMillis;
+
+        public ImportReport(long rows, long rejected, long elapsedMillis) {
+            this.rows = rows;
+            this.rejected = rejected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedMillis == 0 ? rows * 1000 : rows * 1000 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows (" + rejected + " rejected) in " + elapsedMillis + " ms, "
+                    + getRowsPerSecond() + " rows/s";
+        }
+    }
+}
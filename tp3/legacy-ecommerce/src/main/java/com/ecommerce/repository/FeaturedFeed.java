@@ -0,0 +1,75 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Home page feed: the featured products in id order, kept up to date by the
+ * repository listener. Saves of non-featured products cost one lookup; a change
+ * to a featured product updates the featured set and the list is rebuilt from
+ * that set on the next read, never from a catalog scan.
+ */
+public class FeaturedFeed implements ProductListener {
+
+    // the version restarts with the process, the epoch (start time) tells runs apart in ETags
+    private final long epoch = System.currentTimeMillis();
+    private final Map<Long, Product> featured = new TreeMap<>();
+    private long version;
+    private volatile Snapshot snapshot = new Snapshot(epoch, 0, Collections.emptyList());
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = new Snapshot(epoch, version, Collections.unmodifiableList(new ArrayList<>(featured.values())));
+            }
+            return snapshot;
+        }
+    }
+
+    @Override
+    public synchronized void productSaved(Product product) {
+        if (product.featured) {
+            featured.put(product.id, product);
+        } else if (featured.remove(product.id) == null) {
+            return;
+        }
+        changed();
+    }
+
+    @Override
+    public synchronized void productDeleted(Product product) {
+        if (featured.remove(product.id) != null) {
+            changed();
+        }
+    }
+
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+
+    public static class Snapshot {
+        public final long epoch;
+        public final long version;
+        public final List<Product> products;
+
+        Snapshot(long epoch, long version, List<Product> products) {
+            this.epoch = epoch;
+            this.version = version;
+            this.products = products;
+        }
+
+        public String getETag() {
+            return "\"featured-" + epoch + "-" + version + "\"";
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Default store: the Product objects themselves, ordered by id.
+ */
+class HeapProductStore implements ProductStore {
+
+    private final ConcurrentNavigableMap<Long, Product> products = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Product get(Long id) {
+        return products.get(id);
+    }
+
+    @Override
+    public void put(Product product) {
+        products.put(product.id, product);
+    }
+
+    @Override
+    public Product remove(Long id) {
+        return products.remove(id);
+    }
+
+    @Override
+    public int size() {
+        return products.size();
+    }
+
+    @Override
+    public Iterable<Product> values(Long afterId) {
+        ConcurrentNavigableMap<Long, Product> view = afterId == null ? products : products.tailMap(afterId, false);
+        return Collections.unmodifiableCollection(view.values());
+    }
+}
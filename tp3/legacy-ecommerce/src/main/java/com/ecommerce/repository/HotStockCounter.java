@@ -0,0 +1,114 @@
+package com.ecommerce.repository;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock of a hot product split into per-stripe budgets, LongAdder style: a take
+ * only CASes the cell of the calling thread, and only when that cell cannot cover
+ * it are all the budgets pooled and spread again under the counter's lock. Cells
+ * never go below zero, so neither does the total. Cells are padded to their own
+ * cache lines.
+ */
+class HotStockCounter {
+
+    enum Take { TAKEN, INSUFFICIENT, RETIRED }
+
+    private static final int PAD = 16;
+
+    private final int stripes;
+    private final AtomicLongArray cells;
+    private boolean retired;
+
+    /** Stock last published to Product.stock; accessed under the product's stripe lock. */
+    int published;
+
+    HotStockCounter(long initial) {
+        int wanted = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        this.stripes = Integer.highestOneBit(wanted - 1) << 1;
+        this.cells = new AtomicLongArray(stripes * PAD);
+        spread(initial);
+        published = (int) initial;
+    }
+
+    Take tryTake(int units) {
+        int cell = cell();
+        for (long value = cells.get(cell); value >= units; value = cells.get(cell)) {
+            if (cells.compareAndSet(cell, value, value - units)) {
+                return Take.TAKEN;
+            }
+        }
+        return rebalance(-units) ? Take.TAKEN : retired() ? Take.RETIRED : Take.INSUFFICIENT;
+    }
+
+    /**
+     * Adds {@code delta} units (negative to take them), refusing to go below zero.
+     * Returns false when refused or when the counter was retired.
+     */
+    boolean adjust(long delta) {
+        return rebalance(delta);
+    }
+
+    synchronized boolean set(long value) {
+        if (retired || value < 0) {
+            return false;
+        }
+        drain();
+        spread(value);
+        return true;
+    }
+
+    /**
+     * Current total. Holds the counter's lock so that a rebalance, which drains the
+     * cells and spreads them again, is never seen half way; lock-free takes only
+     * lower single cells and cannot tear the total.
+     */
+    synchronized long snapshot() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    /** Stops the counter and returns what was left; later takes report RETIRED. */
+    synchronized long retire() {
+        retired = true;
+        return drain();
+    }
+
+    private synchronized boolean retired() {
+        return retired;
+    }
+
+    private synchronized boolean rebalance(long delta) {
+        if (retired) {
+            return false;
+        }
+        long total = drain();
+        boolean applied = total + delta >= 0;
+        spread(applied ? total + delta : total);
+        return applied;
+    }
+
+    /* Cells are emptied with getAndSet, so a concurrent take either got in before or sees an empty cell. */
+    private long drain() {
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.getAndSet(i * PAD, 0);
+        }
+        return total;
+    }
+
+    private void spread(long total) {
+        long share = total / stripes;
+        long remainder = total % stripes;
+        for (int i = 0; i < stripes; i++) {
+            cells.addAndGet(i * PAD, share + (i < remainder ? 1 : 0));
+        }
+    }
+
+    private int cell() {
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (h >>> 40) & (stripes - 1)) * PAD;
+    }
+}
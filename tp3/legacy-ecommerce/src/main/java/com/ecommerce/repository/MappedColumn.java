@@ -0,0 +1,89 @@
+package com.ecommerce.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-width column of primitive values in a memory-mapped file, indexed by slot.
+ * Growing the column maps a larger region of the same file; buffers handed out
+ * before stay valid for the slots they already covered. Writers must be serialized
+ * by the caller.
+ */
+final class MappedColumn implements AutoCloseable {
+
+    private static final int INITIAL_SLOTS = 1 << 14;
+
+    private final FileChannel channel;
+    private final int width;
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+
+    MappedColumn(Path file, int width) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.width = width;
+        remap(INITIAL_SLOTS);
+    }
+
+    void ensureCapacity(int slots) {
+        if (slots <= capacity) {
+            return;
+        }
+        long grown = Math.max(slots, (long) capacity * 2);
+        long maxSlots = Integer.MAX_VALUE / width;
+        if (slots > maxSlots) {
+            throw new IllegalStateException("Column cannot hold more than " + maxSlots + " slots");
+        }
+        remap((int) Math.min(grown, maxSlots));
+    }
+
+    long getLong(int slot) {
+        return buffer.getLong(slot * width);
+    }
+
+    void putLong(int slot, long value) {
+        buffer.putLong(slot * width, value);
+    }
+
+    double getDouble(int slot) {
+        return buffer.getDouble(slot * width);
+    }
+
+    void putDouble(int slot, double value) {
+        buffer.putDouble(slot * width, value);
+    }
+
+    int getInt(int slot) {
+        return buffer.getInt(slot * width);
+    }
+
+    void putInt(int slot, int value) {
+        buffer.putInt(slot * width, value);
+    }
+
+    byte getByte(int slot) {
+        return buffer.get(slot * width);
+    }
+
+    void putByte(int slot, byte value) {
+        buffer.put(slot * width, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void remap(int slots) {
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * width);
+            capacity = slots;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow column to " + slots + " slots", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.ecommerce.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only UTF-8 string storage in memory-mapped chunk files. A reference packs
+ * the chunk number and the offset of a length-prefixed entry; entries are never
+ * modified once written, so a reference can be decoded without any lock. Space of
+ * replaced strings is not reclaimed. Appends must be serialized by the caller.
+ */
+final class MappedStringArena implements AutoCloseable {
+
+    static final long NULL_REF = -1;
+
+    private static final int CHUNK_BITS = 28;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final Path directory;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private FileChannel[] channels = new FileChannel[0];
+    private int position = CHUNK_SIZE;
+
+    MappedStringArena(Path directory) {
+        this.directory = directory;
+    }
+
+    static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    long append(byte[] bytes) {
+        if (bytes == null) {
+            return NULL_REF;
+        }
+        int entrySize = 4 + bytes.length;
+        if (entrySize > CHUNK_SIZE) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too large");
+        }
+        if (position + entrySize > CHUNK_SIZE) {
+            addChunk();
+        }
+        int chunk = chunks.length - 1;
+        ByteBuffer target = chunks[chunk].duplicate();
+        target.position(position);
+        target.putInt(bytes.length);
+        target.put(bytes);
+        long ref = ((long) chunk << CHUNK_BITS) | position;
+        position += entrySize;
+        return ref;
+    }
+
+    /**
+     * True when {@code ref} already holds exactly {@code bytes}, so an unchanged
+     * field can keep its entry instead of appending a copy.
+     */
+    boolean matches(long ref, byte[] bytes) {
+        if (ref == NULL_REF || bytes == null) {
+            return ref == NULL_REF && bytes == null;
+        }
+        ByteBuffer entry = entry(ref);
+        if (entry.getInt() != bytes.length) {
+            return false;
+        }
+        for (byte b : bytes) {
+            if (entry.get() != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String read(long ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        ByteBuffer entry = entry(ref);
+        byte[] bytes = new byte[entry.getInt()];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer entry(long ref) {
+        ByteBuffer entry = chunks[(int) (ref >>> CHUNK_BITS)].duplicate();
+        entry.position((int) (ref & (CHUNK_SIZE - 1)));
+        return entry;
+    }
+
+    private void addChunk() {
+        int index = chunks.length;
+        Path file = directory.resolve(String.format("strings-%04d.bin", index));
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+            channels = Arrays.copyOf(channels, index + 1);
+            channels[index] = channel;
+            MappedByteBuffer[] grown = Arrays.copyOf(chunks, index + 1);
+            grown[index] = chunk;
+            chunks = grown;
+            position = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map string chunk " + file, e);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Columnar store for very large catalogs. Each field lives in its own memory-mapped
+ * column indexed by a slot number, strings go to an append-only mapped arena and
+ * category/status are dictionary coded, so the heap only holds an id to slot hash
+ * table (two primitive arrays). Product objects are materialized on every read and
+ * never retained: callers that change a product must save it again.
+ *
+ * The mapped files are working storage recreated on startup; durability is the
+ * WAL's job (ecommerce.wal.dir). Writes take a short exclusive lock; reads are
+ * optimistic and only fall back to a read lock when they raced a write.
+ */
+class OffHeapProductStore implements ProductStore, AutoCloseable {
+
+    private static final byte ACTIVE = 1;
+    private static final byte FEATURED = 2;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_CODE = -1;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final MappedColumn ids;
+    private final MappedColumn prices;
+    private final MappedColumn stocks;
+    private final MappedColumn createdAt;
+    private final MappedColumn flags;
+    private final MappedColumn categories;
+    private final MappedColumn statuses;
+    private final MappedColumn names;
+    private final MappedColumn descriptions;
+    private final MappedStringArena strings;
+
+    private final Dictionary categoryDictionary = new Dictionary();
+    private final Dictionary statusDictionary = new Dictionary();
+
+    private volatile SlotTable table = new SlotTable(1 << 10);
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+    private volatile int size;
+    private volatile long[] sortedIds;
+
+    OffHeapProductStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ids = new MappedColumn(directory.resolve("id.col"), 8);
+        prices = new MappedColumn(directory.resolve("price.col"), 8);
+        stocks = new MappedColumn(directory.resolve("stock.col"), 4);
+        createdAt = new MappedColumn(directory.resolve("created_at.col"), 8);
+        flags = new MappedColumn(directory.resolve("flags.col"), 1);
+        categories = new MappedColumn(directory.resolve("category.col"), 4);
+        statuses = new MappedColumn(directory.resolve("status.col"), 4);
+        names = new MappedColumn(directory.resolve("name.col"), 8);
+        descriptions = new MappedColumn(directory.resolve("description.col"), 8);
+        strings = new MappedStringArena(directory);
+    }
+
+    @Override
+    public Product get(Long id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Row row = readRow(id);
+                if (lock.validate(stamp)) {
+                    return materialize(row);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // raced a table resize or column growth, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        Row row;
+        try {
+            row = readRow(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return materialize(row);
+    }
+
+    @Override
+    public void put(Product product) {
+        byte[] name = MappedStringArena.encode(product.name);
+        byte[] description = MappedStringArena.encode(product.description);
+        long stamp = lock.writeLock();
+        try {
+            SlotTable current = table;
+            int slot = current.get(product.id);
+            boolean inserted = slot < 0;
+            if (inserted) {
+                slot = allocateSlot();
+            }
+            ids.putLong(slot, product.id);
+            prices.putDouble(slot, product.price);
+            stocks.putInt(slot, product.stock);
+            createdAt.putLong(slot, product.createdAt == null ? NULL_DATE : product.createdAt.getTime());
+            flags.putByte(slot, (byte) ((product.isActive() ? ACTIVE : 0) | (product.featured ? FEATURED : 0)));
+            categories.putInt(slot, categoryDictionary.code(product.category));
+            statuses.putInt(slot, statusDictionary.code(product.status));
+            long nameRef = inserted ? MappedStringArena.NULL_REF : names.getLong(slot);
+            if (inserted || !strings.matches(nameRef, name)) {
+                names.putLong(slot, strings.append(name));
+            }
+            long descriptionRef = inserted ? MappedStringArena.NULL_REF : descriptions.getLong(slot);
+            if (inserted || !strings.matches(descriptionRef, description)) {
+                descriptions.putLong(slot, strings.append(description));
+            }
+            if (inserted) {
+                if (current.isFull()) {
+                    current = current.resize();
+                    table = current;
+                }
+                current.put(product.id, slot);
+                size++;
+                sortedIds = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Product remove(Long id) {
+        long stamp = lock.writeLock();
+        Row row;
+        try {
+            row = readRow(id);
+            if (row == null) {
+                return null;
+            }
+            table.remove(id);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = row.slot;
+            size--;
+            sortedIds = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return materialize(row);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<Product> values(Long afterId) {
+        return () -> new Iterator<Product>() {
+            private final long[] order = sortedIds();
+            private int next = afterId == null ? 0 : firstAfter(order, afterId);
+            private Product pending;
+
+            @Override
+            public boolean hasNext() {
+                while (pending == null && next < order.length) {
+                    pending = get(order[next++]);
+                }
+                return pending != null;
+            }
+
+            @Override
+            public Product next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Product product = pending;
+                pending = null;
+                return product;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (MappedColumn column : new MappedColumn[] {ids, prices, stocks, createdAt, flags,
+                categories, statuses, names, descriptions}) {
+            column.close();
+        }
+        strings.close();
+    }
+
+    /*
+     * Id order is only needed for pagination and streaming, so it is rebuilt lazily
+     * after inserts or deletes instead of being maintained on every write.
+     */
+    private long[] sortedIds() {
+        long[] order = sortedIds;
+        if (order != null) {
+            return order;
+        }
+        long stamp = lock.readLock();
+        try {
+            order = table.keys(size);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        Arrays.sort(order);
+        sortedIds = order;
+        return order;
+    }
+
+    private static int firstAfter(long[] order, long afterId) {
+        int index = Arrays.binarySearch(order, afterId);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        int slot = nextSlot++;
+        for (MappedColumn column : new MappedColumn[] {ids, prices, stocks, createdAt, flags,
+                categories, statuses, names, descriptions}) {
+            column.ensureCapacity(slot + 1);
+        }
+        return slot;
+    }
+
+    /*
+     * Copies the primitive fields and string references of one slot. Arena entries
+     * are immutable, so decoding the strings can wait until the read is validated.
+     */
+    private Row readRow(Long id) {
+        int slot = table.get(id);
+        if (slot < 0) {
+            return null;
+        }
+        Row row = new Row();
+        row.slot = slot;
+        row.id = ids.getLong(slot);
+        row.price = prices.getDouble(slot);
+        row.stock = stocks.getInt(slot);
+        row.createdAt = createdAt.getLong(slot);
+        row.flags = flags.getByte(slot);
+        row.category = categories.getInt(slot);
+        row.status = statuses.getInt(slot);
+        row.name = names.getLong(slot);
+        row.description = descriptions.getLong(slot);
+        return row;
+    }
+
+    private Product materialize(Row row) {
+        if (row == null) {
+            return null;
+        }
+        Product product = new Product();
+        product.id = row.id;
+        product.name = strings.read(row.name);
+        product.description = strings.read(row.description);
+        product.price = row.price;
+        product.stock = row.stock;
+        product.category = categoryDictionary.value(row.category);
+        product.createdAt = row.createdAt == NULL_DATE ? null : new Date(row.createdAt);
+        product.setActive((row.flags & ACTIVE) != 0);
+        product.status = statusDictionary.value(row.status);
+        product.featured = (row.flags & FEATURED) != 0;
+        return product;
+    }
+
+    private static class Row {
+        int slot;
+        long id;
+        double price;
+        int stock;
+        long createdAt;
+        byte flags;
+        int category;
+        int status;
+        long name;
+        long description;
+    }
+
+    /**
+     * Low-cardinality strings (category, status) stored once and referenced by code.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[0];
+
+        int code(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.length;
+                String[] grown = Arrays.copyOf(values, code + 1);
+                grown[code] = value;
+                values = grown;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String value(int code) {
+            return code == NULL_CODE ? null : values[code];
+        }
+    }
+
+    /**
+     * Open-addressing id to slot table with linear probing and backward-shift
+     * deletion, so there are no tombstones. Mutated only under the write lock.
+     */
+    private static class SlotTable {
+        private static final int EMPTY = -1;
+
+        private final long[] keys;
+        private final int[] slots;
+        private final int mask;
+        private int count;
+
+        SlotTable(int capacity) {
+            keys = new long[capacity];
+            slots = new int[capacity];
+            Arrays.fill(slots, EMPTY);
+            mask = capacity - 1;
+        }
+
+        int get(long key) {
+            for (int i = index(key); ; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == EMPTY || keys[i] == key) {
+                    return slot;
+                }
+            }
+        }
+
+        void put(long key, int slot) {
+            int i = index(key);
+            while (slots[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == EMPTY) {
+                count++;
+            }
+            keys[i] = key;
+            slots[i] = slot;
+        }
+
+        void remove(long key) {
+            int i = index(key);
+            while (slots[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == EMPTY) {
+                return;
+            }
+            count--;
+            int hole = i;
+            for (int j = (hole + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+                int home = index(keys[j]);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    slots[hole] = slots[j];
+                    hole = j;
+                }
+            }
+            slots[hole] = EMPTY;
+        }
+
+        boolean isFull() {
+            return count + 1 > keys.length / 2;
+        }
+
+        SlotTable resize() {
+            SlotTable grown = new SlotTable(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (slots[i] != EMPTY) {
+                    grown.put(keys[i], slots[i]);
+                }
+            }
+            return grown;
+        }
+
+        long[] keys(int expected) {
+            long[] result = new long[expected];
+            int n = 0;
+            for (int i = 0; i < keys.length && n < expected; i++) {
+                if (slots[i] != EMPTY) {
+                    result[n++] = keys[i];
+                }
+            }
+            return n == expected ? result : Arrays.copyOf(result, n);
+        }
+
+        private int index(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * category -> product ids, maintained incrementally so that findByCategory costs
+ * O(result size). Remembers the last indexed category of each product because
+ * callers mutate Product instances in place before saving them.
+ */
+class ProductCategoryIndex implements ProductListener {
+
+    private final Map<String, Set<Long>> idsByCategory = new ConcurrentHashMap<>();
+    private final Map<Long, String> categoryById = new ConcurrentHashMap<>();
+
+    @Override
+    public void productSaved(Product product) {
+        String previous = product.category == null
+                ? categoryById.remove(product.id)
+                : categoryById.put(product.id, product.category);
+        if (Objects.equals(previous, product.category)) {
+            return;
+        }
+        if (previous != null) {
+            remove(previous, product.id);
+        }
+        if (product.category != null) {
+            idsByCategory.compute(product.category, (category, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                }
+                ids.add(product.id);
+                return ids;
+            });
+        }
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        String previous = categoryById.remove(product.id);
+        if (previous != null) {
+            remove(previous, product.id);
+        }
+    }
+
+    public Set<Long> idsFor(String category) {
+        Set<Long> ids = idsByCategory.get(category);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    private void remove(String category, Long id) {
+        idsByCategory.computeIfPresent(category, (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
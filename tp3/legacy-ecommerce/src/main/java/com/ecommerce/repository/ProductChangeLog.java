@@ -0,0 +1,98 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded in-memory log of catalog mutations. Every save or delete gets the next
+ * sequence number; the last {@code capacity} changes are kept in a ring of
+ * primitive arrays (id + kind), so the log costs a few bytes per change and the
+ * product itself is read at delivery time. The sequence restarts with the
+ * process, which is why it is paired with an epoch (the start time).
+ */
+public class ProductChangeLog implements ProductListener {
+
+    public static final String SAVED = "SAVED";
+    public static final String DELETED = "DELETED";
+
+    private final long epoch = System.currentTimeMillis();
+    private final long[] ids;
+    private final boolean[] deleted;
+    private long sequence;
+
+    public ProductChangeLog(int capacity) {
+        ids = new long[capacity];
+        deleted = new boolean[capacity];
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public synchronized long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        append(product.id, false);
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        append(product.id, true);
+    }
+
+    private synchronized void append(long id, boolean removal) {
+        int slot = (int) (sequence % ids.length);
+        ids[slot] = id;
+        deleted[slot] = removal;
+        sequence++;
+        notifyAll();
+    }
+
+    /**
+     * Changes with a sequence greater than {@code since}, oldest first, at most
+     * {@code limit} of them; null when {@code since} is no longer covered by the
+     * log (or belongs to a later sequence, i.e. another epoch), in which case the
+     * reader has to resynchronize from a full read.
+     */
+    public synchronized List<Change> since(long since, int limit) {
+        if (since < 0 || since < sequence - ids.length || since > sequence) {
+            return null;
+        }
+        int count = (int) Math.min(limit, sequence - since);
+        List<Change> changes = new ArrayList<>(count);
+        for (long seq = since + 1; seq <= since + count; seq++) {
+            int slot = (int) ((seq - 1) % ids.length);
+            changes.add(new Change(seq, ids[slot], deleted[slot]));
+        }
+        return changes;
+    }
+
+    /**
+     * Waits until the sequence moves past {@code since} or the timeout expires.
+     */
+    public synchronized void await(long since, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (sequence <= since && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    public static class Change {
+        public final long sequence;
+        public final long id;
+        public final boolean deleted;
+
+        Change(long sequence, long id, boolean deleted) {
+            this.sequence = sequence;
+            this.id = id;
+            this.deleted = deleted;
+        }
+    }
+}
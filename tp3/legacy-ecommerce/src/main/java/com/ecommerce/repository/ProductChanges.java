@@ -0,0 +1,36 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delta between a reader's sequence and the catalog. {@code sequence} is where the
+ * next read resumes. When {@code reset} is set the log no longer covers the
+ * requested range (or the epoch changed): the reader reloads the full catalog and
+ * resumes from {@code sequence}, which was taken before that reload.
+ */
+public class ProductChanges {
+
+    public long epoch;
+    public long since;
+    public long sequence;
+    public boolean reset;
+    public boolean hasMore;
+    public List<Item> changes = new ArrayList<>();
+
+    public static class Item {
+        public long sequence;
+        public String type;
+        public Long id;
+        public Product product;
+
+        Item(long sequence, String type, Long id, Product product) {
+            this.sequence = sequence;
+            this.type = type;
+            this.id = id;
+            this.product = product;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Compact binary form of a Product, shared by the write-ahead log and snapshots.
+ */
+final class ProductCodec {
+
+    private static final int MAX_STRING_BYTES = 16 << 20;
+
+    private ProductCodec() {
+    }
+
+    static void write(DataOutput out, Product product) throws IOException {
+        write(out, product, product.stock);
+    }
+
+    /** Writes {@code product} with {@code stock} in place of its own stock. */
+    static void write(DataOutput out, Product product, int stock) throws IOException {
+        out.writeLong(product.id);
+        writeString(out, product.name);
+        writeString(out, product.description);
+        out.writeDouble(product.price);
+        out.writeInt(stock);
+        writeString(out, product.category);
+        out.writeLong(product.createdAt == null ? Long.MIN_VALUE : product.createdAt.getTime());
+        out.writeBoolean(product.isActive());
+        writeString(out, product.status);
+        out.writeBoolean(product.featured);
+    }
+
+    static Product read(DataInput in) throws IOException {
+        Product product = new Product();
+        product.id = in.readLong();
+        product.name = readString(in);
+        product.description = readString(in);
+        product.price = in.readDouble();
+        product.stock = in.readInt();
+        product.category = readString(in);
+        long createdAt = in.readLong();
+        product.createdAt = createdAt == Long.MIN_VALUE ? null : new Date(createdAt);
+        product.setActive(in.readBoolean());
+        product.status = readString(in);
+        product.featured = in.readBoolean();
+        return product;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupted string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,14 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+/**
+ * Callback used by ProductRepository to keep secondary structures (indexes, caches)
+ * in sync with the catalog. Called synchronously from save/delete.
+ */
+public interface ProductListener {
+
+    void productSaved(Product product);
+
+    void productDeleted(Product product);
+}
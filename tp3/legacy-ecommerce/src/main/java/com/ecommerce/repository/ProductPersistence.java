@@ -0,0 +1,160 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Optional durability for ProductRepository: every mutation seen by the listener is
+ * appended to the WAL, the repository waits for the group fsync once it has released
+ * its stripe lock, and a background task periodically writes a snapshot and drops the
+ * WAL segments it covers. On startup the latest snapshot is loaded and the WAL tail
+ * replayed.
+ */
+class ProductPersistence implements ProductListener, AutoCloseable {
+
+    private final ProductWriteAheadLog wal;
+    private final ProductSnapshotStore snapshots;
+    private final ThreadLocal<long[]> pendingSeq = ThreadLocal.withInitial(() -> new long[1]);
+    private final ToIntFunction<Long> heldUnits;
+
+    private ScheduledExecutorService scheduler;
+    private volatile long lastSnapshotSeq;
+
+    /**
+     * {@code heldUnits} gives the units of a product held for carts: they are out of
+     * the in-memory stock but are logged as still on the shelf, since holds are not
+     * recovered.
+     */
+    ProductPersistence(Path directory, long segmentBytes, ToIntFunction<Long> heldUnits) throws IOException {
+        this.wal = new ProductWriteAheadLog(directory, segmentBytes);
+        this.snapshots = new ProductSnapshotStore(directory);
+        this.heldUnits = heldUnits;
+    }
+
+    /**
+     * Restores the catalog into {@code target} and starts accepting appends.
+     * Returns the last recovered sequence, 0 when the directory held no data.
+     */
+    long recover(RecoveryTarget target) throws IOException {
+        long start = System.nanoTime();
+        ProductSnapshotStore.Loaded snapshot = snapshots.loadLatest();
+        target.restore(snapshot.products);
+        long[] replayed = new long[1];
+        long lastSeq = wal.replay(snapshot.seq, (seq, type, payload) -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if (type == ProductWriteAheadLog.SAVE) {
+                target.restore(Collections.singletonList(ProductCodec.read(in)));
+            } else if (type == ProductWriteAheadLog.DELETE) {
+                target.remove(in.readLong());
+            } else {
+                throw new IOException("Unknown WAL record type " + type + " at sequence " + seq);
+            }
+            replayed[0]++;
+        });
+        lastSnapshotSeq = snapshot.seq;
+        wal.start();
+        System.out.println("Recovered " + snapshot.products.size() + " products from snapshot " + snapshot.seq
+                + " and " + replayed[0] + " WAL records in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return lastSeq;
+    }
+
+    void startSnapshots(long intervalSeconds, Supplier<State> source) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "product-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(source);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Product snapshot failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void snapshot(Supplier<State> source) throws IOException {
+        State state = source.get();
+        if (state.seq == lastSnapshotSeq) {
+            return;
+        }
+        long start = System.nanoTime();
+        snapshots.write(state.seq, state.products, heldUnits);
+        wal.deleteSegmentsUpTo(state.seq);
+        lastSnapshotSeq = state.seq;
+        System.out.println("Wrote snapshot " + state.seq + " (" + state.products.size() + " products) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    long lastSequence() {
+        return wal.lastAppendedSequence();
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            ProductCodec.write(new DataOutputStream(bytes), product, product.stock + heldUnits.applyAsInt(product.id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingSeq.get()[0] = wal.append(ProductWriteAheadLog.SAVE, bytes.toByteArray());
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        byte[] payload = ByteBuffer.allocate(8).putLong(product.id).array();
+        pendingSeq.get()[0] = wal.append(ProductWriteAheadLog.DELETE, payload);
+    }
+
+    /**
+     * Blocks until every record appended by the calling thread is on disk.
+     */
+    void awaitPendingWrites() {
+        long[] pending = pendingSeq.get();
+        if (pending[0] > 0) {
+            long seq = pending[0];
+            pending[0] = 0;
+            wal.awaitDurable(seq);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        wal.close();
+    }
+
+    interface RecoveryTarget {
+        void restore(List<Product> products);
+
+        void remove(Long id);
+    }
+
+    static class State {
+        final long seq;
+        final List<Product> products;
+
+        State(long seq, List<Product> products) {
+            this.seq = seq;
+            this.products = products;
+        }
+    }
+}
@@ -1,28 +1,112 @@
 package com.ecommerce.repository;
 
 import com.ecommerce.model.Product;
+import com.ecommerce.search.InventoryValuation;
+import com.ecommerce.search.ProductAutocomplete;
+import com.ecommerce.search.ProductFacetIndex;
+import com.ecommerce.search.ProductFilter;
+import com.ecommerce.search.ProductFilterResult;
+import com.ecommerce.search.ProductSearchIndex;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+/**
+ * Thread-safe product store. Writes are serialized per id through a striped lock
+ * table and are copy-on-write: a stored Product is never changed, a write stores a
+ * changed copy, so readers and listeners only see immutable instances.
+ * findAll/findByCategory return point-in-time views built with an optimistic
+ * (seqlock-style) read that does not block writers. Products are kept ordered by
+ * id for keyset pagination, either as heap objects or, for very large catalogs, in
+ * the off-heap columnar store (see OffHeapProductStore).
+ */
 public class ProductRepository {
     
-    private static ProductRepository instance;
+    private static final int LOCK_STRIPES = 64;
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 16;
+    private static final long HOT_STOCK_FLUSH_MILLIS = Long.getLong("ecommerce.hotstock.flushMillis", 200);
+    private static final int CHANGE_LOG_CAPACITY = Integer.getInteger("ecommerce.changes.capacity", 100_000);
+    // before-image of a product that did not exist yet
+    private static final Product ABSENT = new Product();
     
-    private Map<Long, Product> products = new HashMap<>();
+    private static volatile ProductRepository instance;
+    
+    private ProductStore products = openStore();
     private AtomicLong idGenerator = new AtomicLong(1);
     
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesCompleted = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(-1, Collections.emptyList());
+    // fallback reads in progress, replaced on change; writers read it once per write
+    private volatile ReadView[] readViews = new ReadView[0];
+    
+    private ProductSearchIndex searchIndex = new ProductSearchIndex();
+    private ProductCategoryIndex categoryIndex = new ProductCategoryIndex();
+    private ProductFacetIndex facetIndex = new ProductFacetIndex();
+    private ProductVersions versions = new ProductVersions();
+    private FeaturedFeed featuredFeed = new FeaturedFeed();
+    private ProductAutocomplete autocomplete = new ProductAutocomplete();
+    private ProductChangeLog changeLog = new ProductChangeLog(CHANGE_LOG_CAPACITY);
+    private List<ProductListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ProductPersistence persistence;
+    // units taken out of stock by cart holds, per product; changed under the product's stripe lock
+    private final Map<Long, Integer> heldUnits = new ConcurrentHashMap<>();
+    private final Map<Long, HotStockCounter> hotStock = new ConcurrentHashMap<>();
+    private ScheduledExecutorService hotStockFlusher;
+    
     private ProductRepository() {
-        initializeData();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        listeners.add(searchIndex);
+        listeners.add(categoryIndex);
+        listeners.add(facetIndex);
+        listeners.add(versions);
+        listeners.add(featuredFeed);
+        listeners.add(autocomplete);
+        listeners.add(changeLog);
+        
+        String walDir = System.getProperty("ecommerce.wal.dir");
+        if (walDir == null) {
+            initializeData();
+        } else {
+            openPersistence(walDir);
+        }
     }
     
     public static ProductRepository getInstance() {
         if (instance == null) {
-            instance = new ProductRepository();
+            synchronized (ProductRepository.class) {
+                if (instance == null) {
+                    instance = new ProductRepository();
+                }
+            }
         }
         return instance;
     }
     
     private void initializeData() {
+        String catalogFile = System.getProperty("ecommerce.catalog.file");
+        if (catalogFile != null) {
+            try {
+                new CatalogImporter(this).importFile(Paths.get(catalogFile));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot import catalog " + catalogFile, e);
+            }
+            return;
+        }
+        
         addProduct("Laptop", "High-performance laptop", 999.99, 10, "Electronics");
         addProduct("Mouse", "Wireless mouse", 29.99, 50, "Electronics");
         addProduct("Keyboard", "Mechanical keyboard", 79.99, 30, "Electronics");
@@ -30,6 +114,80 @@ public class ProductRepository {
         addProduct("Desk Chair", "Ergonomic office chair", 299.99, 20, "Furniture");
     }
     
+    /*
+     * Replays snapshot + WAL through saveAll/delete before the WAL listener is
+     * registered, so recovery itself is not logged again. A fresh directory is
+     * seeded with the default catalog, which then goes through the log.
+     */
+    private void openPersistence(String walDir) {
+        long segmentBytes = Long.getLong("ecommerce.wal.segmentBytes", 64L << 20);
+        long snapshotInterval = Long.getLong("ecommerce.wal.snapshotIntervalSeconds", 300);
+        try {
+            ProductPersistence opened = new ProductPersistence(Paths.get(walDir), segmentBytes, this::getHeldUnits);
+            long recoveredSeq = opened.recover(new ProductPersistence.RecoveryTarget() {
+                @Override
+                public void restore(List<Product> batch) {
+                    saveAll(batch);
+                }
+                
+                @Override
+                public void remove(Long id) {
+                    delete(id);
+                }
+            });
+            listeners.add(opened);
+            persistence = opened;
+            if (recoveredSeq == 0) {
+                initializeData();
+            }
+            opened.startSnapshots(snapshotInterval, this::persistentState);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    System.out.println("Cannot close WAL: " + e.getMessage());
+                }
+            }, "product-wal-shutdown"));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open product WAL in " + walDir, e);
+        }
+    }
+    
+    /*
+     * The sequence is read first: every record up to it belongs to a write that
+     * completed before the read, so the snapshot covers it. Later records may be
+     * covered too; replaying them on recovery is harmless.
+     */
+    private ProductPersistence.State persistentState() {
+        long seq = persistence.lastSequence();
+        List<Product> all = readConsistent(this::copyAll, product -> true).products;
+        return new ProductPersistence.State(seq, all);
+    }
+    
+    /*
+     * -Decommerce.offheap.dir switches to the memory-mapped columnar store, which
+     * keeps product data out of the Java heap for very large catalogs.
+     */
+    private static ProductStore openStore() {
+        String offHeapDir = System.getProperty("ecommerce.offheap.dir");
+        if (offHeapDir == null) {
+            return new HeapProductStore();
+        }
+        try {
+            return new OffHeapProductStore(Paths.get(offHeapDir));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open off-heap product store in " + offHeapDir, e);
+        }
+    }
+    
+    private List<Product> copyAll() {
+        List<Product> all = new ArrayList<>(products.size());
+        for (Product product : products.values(null)) {
+            all.add(product);
+        }
+        return all;
+    }
+    
     private void addProduct(String name, String description, double price, int stock, String category) {
         Product product = new Product();
         product.id = idGenerator.getAndIncrement();
@@ -40,45 +198,919 @@ public class ProductRepository {
         product.category = category;
         product.active = true;
         product.createdAt = new Date();
-        products.put(product.id, product);
+        save(product);
     }
     
     public Product findById(Long id) {
         return products.get(id);
     }
     
+    /**
+     * Resolves several ids at once. The map follows the iteration order of
+     * {@code ids} and only holds the products that exist.
+     */
+    public Map<Long, Product> findAllById(Collection<Long> ids) {
+        Map<Long, Product> result = new LinkedHashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.put(id, product);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Version of the whole catalog, bumped by every mutation. Read it before the
+     * data it describes: a concurrent write can then only make the tag older than
+     * the body, never let a stale body pass as current.
+     */
+    public ProductVersions.Version getCatalogVersion() {
+        return versions.catalogVersion();
+    }
+    
+    public ProductVersions.Version getVersion(Long id) {
+        return versions.versionOf(id);
+    }
+    
+    public long getChangeEpoch() {
+        return changeLog.epoch();
+    }
+    
+    public long getChangeSequence() {
+        return changeLog.sequence();
+    }
+    
+    /**
+     * Changes after {@code since}, one entry per product (its latest change) with the
+     * product's current state; several changes to the same product collapse into one.
+     * A null epoch is taken as the current one.
+     */
+    public ProductChanges findChanges(Long epoch, long since, int limit) {
+        ProductChanges result = new ProductChanges();
+        result.epoch = changeLog.epoch();
+        result.since = since;
+        List<ProductChangeLog.Change> log = epoch == null || epoch == result.epoch
+                ? changeLog.since(since, limit) : null;
+        if (log == null) {
+            result.reset = true;
+            result.sequence = changeLog.sequence();
+            return result;
+        }
+        
+        Map<Long, ProductChangeLog.Change> latest = new LinkedHashMap<>();
+        for (ProductChangeLog.Change change : log) {
+            latest.remove(change.id);
+            latest.put(change.id, change);
+        }
+        List<Long> savedIds = new ArrayList<>();
+        for (ProductChangeLog.Change change : latest.values()) {
+            if (!change.deleted) {
+                savedIds.add(change.id);
+            }
+        }
+        Map<Long, Product> current = findAllById(savedIds);
+        for (ProductChangeLog.Change change : latest.values()) {
+            Product product = change.deleted ? null : current.get(change.id);
+            // deleted after the change was read: report the deletion now, it is in the log too
+            String type = product == null ? ProductChangeLog.DELETED : ProductChangeLog.SAVED;
+            result.changes.add(new ProductChanges.Item(change.sequence, type, change.id, product));
+        }
+        result.sequence = since + log.size();
+        result.hasMore = result.sequence < changeLog.sequence();
+        return result;
+    }
+    
+    /**
+     * Blocks until a change after {@code since} is logged or the timeout expires.
+     */
+    public void awaitChanges(long since, long timeoutMillis) throws InterruptedException {
+        changeLog.await(since, timeoutMillis);
+    }
+    
     public List<Product> findAll() {
-        return new ArrayList<>(products.values());
+        Snapshot current = snapshot;
+        if (current.version == writesStarted.get() && current.version == writesCompleted.get()) {
+            return current.products;
+        }
+        Snapshot fresh = readConsistent(this::copyAll, product -> true);
+        fresh = new Snapshot(fresh.version, Collections.unmodifiableList(fresh.products));
+        snapshot = fresh;
+        return fresh.products;
+    }
+    
+    /**
+     * Keyset pagination: up to {@code limit} products with an id greater than
+     * {@code afterId} (or from the start when null), in id order.
+     */
+    public List<Product> findPage(Long afterId, int limit) {
+        List<Product> page = new ArrayList<>(limit);
+        for (Product product : products.values(afterId)) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(product);
+        }
+        return page;
+    }
+    
+    /**
+     * Live, id-ordered view of the catalog for streaming. Iterating it copies
+     * nothing but is only weakly consistent with concurrent writes.
+     */
+    public Iterable<Product> iterateAll() {
+        return products.values(null);
     }
     
     public List<Product> findByCategory(String category) {
+        return readConsistent(() -> {
+            Set<Long> ids = categoryIndex.idsFor(category);
+            List<Product> result = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Product product = products.get(id);
+                if (product != null) {
+                    result.add(product);
+                }
+            }
+            return result;
+        }, product -> Objects.equals(product.category, category)).products;
+    }
+    
+    public List<Product> search(String query, int limit) {
+        return search(query, limit, false);
+    }
+    
+    public List<Product> search(String query, int limit, boolean fuzzy) {
+        List<Product> result = new ArrayList<>();
+        for (Long id : searchIndex.search(query, limit, fuzzy)) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+    
+    public List<ProductAutocomplete.Suggestion> autocomplete(String prefix, int limit) {
+        return autocomplete.suggest(prefix, limit);
+    }
+    
+    public ProductFilterResult filter(ProductFilter filter) {
+        filter.validate();
+        Map<Long, Double> scores = filter.hasQuery() ? searchIndex.score(filter.query) : null;
+        ProductFacetIndex.Hits hits = facetIndex.filter(filter, scores);
+        
+        ProductFilterResult result = new ProductFilterResult();
+        result.total = hits.total;
+        result.categoryCounts = hits.categoryCounts;
+        for (Long id : hits.ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.products.add(product);
+            }
+        }
+        return result;
+    }
+    
+    public FeaturedFeed.Snapshot findFeatured() {
+        return featuredFeed.snapshot();
+    }
+    
+    public InventoryValuation inventoryValuation() {
+        return facetIndex.valuation();
+    }
+    
+    public List<Product> findLowStock(int threshold, int limit) {
         List<Product> result = new ArrayList<>();
-        for (Product product : products.values()) {
-            if (category.equals(product.category)) {
+        for (Long id : facetIndex.lowStock(threshold, limit)) {
+            Product product = products.get(id);
+            if (product != null) {
                 result.add(product);
             }
         }
         return result;
     }
     
+    public void addListener(ProductListener listener) {
+        lockAll();
+        try {
+            listeners.add(listener);
+            for (Product product : products.values(null)) {
+                listener.productSaved(product);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    /**
+     * Stores a copy of {@code product}: the caller keeps its instance and may go on
+     * changing it without affecting the stored one.
+     */
     public Product save(Product product) {
         if (product.id == null) {
             product.id = idGenerator.getAndIncrement();
         }
-        products.put(product.id, product);
-        return product;
+        return write(product.id, views -> {
+            Product stored = product.copy();
+            syncHotStock(stored);
+            product.stock = stored.stock;
+            store(stored, views);
+            return product;
+        });
+    }
+    
+    /**
+     * Saves a batch of products, taking each stripe lock once for all the products
+     * it guards. Used by bulk imports. Unlike save, the products are stored as they
+     * are: the caller hands them over and must not change them afterwards.
+     */
+    public void saveAll(Collection<Product> batch) {
+        Map<ReentrantLock, List<Product>> byStripe = new IdentityHashMap<>();
+        long maxId = 0;
+        for (Product product : batch) {
+            if (product.id == null) {
+                product.id = idGenerator.getAndIncrement();
+            }
+            maxId = Math.max(maxId, product.id);
+            byStripe.computeIfAbsent(lockFor(product.id), lock -> new ArrayList<>()).add(product);
+        }
+        long nextId = maxId + 1;
+        idGenerator.accumulateAndGet(nextId, Math::max);
+        
+        for (Map.Entry<ReentrantLock, List<Product>> stripe : byStripe.entrySet()) {
+            ReentrantLock lock = stripe.getKey();
+            lock.lock();
+            writesStarted.incrementAndGet();
+            try {
+                ReadView[] views = readViews;
+                for (Product product : stripe.getValue()) {
+                    syncHotStock(product);
+                    store(product, views);
+                }
+            } finally {
+                writesCompleted.incrementAndGet();
+                lock.unlock();
+            }
+        }
+        awaitDurable();
     }
     
     public void delete(Long id) {
-        products.remove(id);
+        write(id, views -> {
+            keepBeforeImage(id, views);
+            Product removed = products.remove(id);
+            heldUnits.remove(id);
+            HotStockCounter counter = hotStock.remove(id);
+            if (counter != null) {
+                counter.retire();
+            }
+            if (removed != null) {
+                for (ProductListener listener : listeners) {
+                    listener.productDeleted(removed);
+                }
+            }
+            return removed;
+        });
     }
     
     public boolean decrementStock(Long productId, int quantity) {
-        Product product = products.get(productId);
-        if (product != null && product.stock >= quantity) {
-            product.stock -= quantity;
+        return reserveStock(Collections.singletonMap(productId, quantity)).isEmpty();
+    }
+    
+    /**
+     * Takes {@code quantities} (product id to units) out of stock, all or nothing.
+     * Only the stripes of the products involved are locked, in stripe order so that
+     * concurrent reservations cannot deadlock; every line is checked before any is
+     * applied, so a failed reservation leaves no partial decrement to roll back.
+     * Returns the ids that could not be served (unknown or not enough stock), empty
+     * on success.
+     */
+    public List<Long> reserveStock(Map<Long, Integer> quantities) {
+        return reserveStock(quantities, Collections.emptyMap());
+    }
+    
+    /**
+     * Same as {@link #reserveStock(Map)}, where up to {@code fromHolds} units of a
+     * product come from the caller's holds (see holdStock) instead of the stock.
+     */
+    public List<Long> reserveStock(Map<Long, Integer> quantities, Map<Long, Integer> fromHolds) {
+        List<Long> insufficient = takeStock(quantities, fromHolds, false);
+        if (insufficient.isEmpty()) {
+            awaitDurable();
+        }
+        return insufficient;
+    }
+    
+    /**
+     * Holds {@code quantities} for a cart, all or nothing: the units leave the stock
+     * right away, so every endpoint reports what is left to sell, and come back
+     * with releaseHeld or are sold with reserveStock. Holds are not persisted; the
+     * WAL keeps logging held units as stock, which puts them back on restart.
+     */
+    public List<Long> holdStock(Map<Long, Integer> quantities) {
+        // the logged (physical) stock does not change, so there is nothing to wait for
+        return takeStock(quantities, Collections.emptyMap(), true);
+    }
+    
+    /**
+     * Puts held units back into stock, never more than are currently held.
+     */
+    public void releaseHeld(Map<Long, Integer> quantities) {
+        validateQuantities(quantities);
+        Map<Long, Integer> locked = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            if (hotStock.containsKey(line.getKey())) {
+                restockHot(line.getKey(), claimHeld(line.getKey(), line.getValue()));
+            } else {
+                locked.put(line.getKey(), line.getValue());
+            }
+        }
+        
+        int[] stripes = sortedStripes(locked);
+        lockStripes(stripes, stripes.length);
+        writesStarted.incrementAndGet();
+        try {
+            ReadView[] views = readViews;
+            for (Map.Entry<Long, Integer> line : locked.entrySet()) {
+                if (hotStock.containsKey(line.getKey())) {
+                    // switched to hot mode after the first pass; the stripe lock keeps it hot
+                    restockHot(line.getKey(), claimHeld(line.getKey(), line.getValue()));
+                    continue;
+                }
+                int units = Math.min(line.getValue(), getHeldUnits(line.getKey()));
+                if (units <= 0) {
+                    continue;
+                }
+                addHeld(line.getKey(), -units);
+                Product product = products.get(line.getKey());
+                if (product != null) {
+                    Product changed = product.copy();
+                    changed.stock += units;
+                    store(changed, views);
+                }
+            }
+        } finally {
+            writesCompleted.incrementAndGet();
+            unlockStripes(stripes, stripes.length);
+        }
+    }
+    
+    public int getHeldUnits(Long productId) {
+        Integer held = heldUnits.get(productId);
+        return held == null ? 0 : held;
+    }
+    
+    /**
+     * Hot-SKU mode: the product's stock moves into a striped counter so that
+     * concurrent checkouts of it do not queue on its stripe lock. Takes from the
+     * counter are lock-free; Product.stock, the indexes and the WAL catch up every
+     * HOT_STOCK_FLUSH_MILLIS. Sales made since the last flush are not yet durable.
+     * Returns false when the product does not exist.
+     */
+    public boolean setHotStock(Long id, boolean hot) {
+        boolean found = write(id, views -> {
+            Product product = products.get(id);
+            if (product == null) {
+                return false;
+            }
+            if (hot) {
+                hotStock.putIfAbsent(id, new HotStockCounter(product.stock));
+            } else {
+                HotStockCounter counter = hotStock.remove(id);
+                if (counter != null) {
+                    Product changed = product.copy();
+                    changed.stock = (int) counter.retire();
+                    store(changed, views);
+                }
+            }
             return true;
+        });
+        if (found && hot) {
+            startHotStockFlusher();
+        }
+        return found;
+    }
+    
+    public boolean isHotStock(Long id) {
+        return hotStock.containsKey(id);
+    }
+    
+    /*
+     * Checks every line, then applies them all. A hold moves units from the stock to
+     * heldUnits; a sale takes them from the caller's holds first, then from the stock.
+     * Lines of hot products are taken from their counters first, without locks, and
+     * given back if another line fails. A product switched to hot mode between the
+     * two passes is seen again under its stripe lock and taken from its counter.
+     */
+    private List<Long> takeStock(Map<Long, Integer> quantities, Map<Long, Integer> fromHolds, boolean hold) {
+        validateQuantities(quantities);
+        Map<Long, Integer> locked = quantities;
+        Map<Long, int[]> hotTaken = Collections.emptyMap();
+        List<Long> insufficient = new ArrayList<>();
+        if (!hotStock.isEmpty()) {
+            locked = new LinkedHashMap<>();
+            hotTaken = new HashMap<>();
+            for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                HotStockCounter counter = hotStock.get(line.getKey());
+                int[] taken = new int[2];
+                HotStockCounter.Take take = counter == null ? HotStockCounter.Take.RETIRED
+                        : takeHot(counter, line.getKey(), line.getValue(), fromHolds, hold, taken);
+                if (take == HotStockCounter.Take.TAKEN) {
+                    hotTaken.put(line.getKey(), taken);
+                } else if (take == HotStockCounter.Take.RETIRED) {
+                    locked.put(line.getKey(), line.getValue());
+                } else {
+                    insufficient.add(line.getKey());
+                }
+            }
+            if (!insufficient.isEmpty()) {
+                undoHot(hotTaken, hold);
+                return insufficient;
+            }
+        }
+        
+        int[] stripes = sortedStripes(locked);
+        lockStripes(stripes, stripes.length);
+        writesStarted.incrementAndGet();
+        try {
+            ReadView[] views = readViews;
+            List<Product> reserved = new ArrayList<>(locked.size());
+            for (Map.Entry<Long, Integer> line : locked.entrySet()) {
+                HotStockCounter counter = hotStock.get(line.getKey());
+                if (counter != null) {
+                    // switched to hot mode after the first pass: the counter has the stock
+                    // now, and the stripe lock keeps it from being retired meanwhile
+                    if (hotTaken.isEmpty()) {
+                        hotTaken = new HashMap<>(hotTaken);
+                    }
+                    int[] taken = new int[2];
+                    if (takeHot(counter, line.getKey(), line.getValue(), fromHolds, hold, taken)
+                            == HotStockCounter.Take.TAKEN) {
+                        hotTaken.put(line.getKey(), taken);
+                    } else {
+                        insufficient.add(line.getKey());
+                    }
+                    continue;
+                }
+                Product product = products.get(line.getKey());
+                int fromStock = line.getValue() - heldPart(line.getKey(), line.getValue(), fromHolds);
+                if (product == null || product.stock < fromStock) {
+                    insufficient.add(line.getKey());
+                } else {
+                    reserved.add(product);
+                }
+            }
+            if (insufficient.isEmpty()) {
+                for (Product product : reserved) {
+                    int quantity = locked.get(product.id);
+                    int fromHeld = heldPart(product.id, quantity, fromHolds);
+                    Product changed = product.copy();
+                    changed.stock -= quantity - fromHeld;
+                    addHeld(product.id, hold ? quantity : -fromHeld);
+                    store(changed, views);
+                }
+            }
+        } finally {
+            writesCompleted.incrementAndGet();
+            unlockStripes(stripes, stripes.length);
+        }
+        if (!insufficient.isEmpty()) {
+            undoHot(hotTaken, hold);
+        }
+        return insufficient;
+    }
+    
+    /* {@code taken} receives the units taken from the counter and from holds. */
+    private HotStockCounter.Take takeHot(HotStockCounter counter, Long id, int quantity,
+                                         Map<Long, Integer> fromHolds, boolean hold, int[] taken) {
+        Integer claimed = fromHolds.get(id);
+        int fromHeld = hold || claimed == null ? 0 : claimHeld(id, Math.min(quantity, claimed));
+        HotStockCounter.Take take = counter.tryTake(quantity - fromHeld);
+        if (take != HotStockCounter.Take.TAKEN) {
+            addHeld(id, fromHeld);
+            return take;
+        }
+        if (hold) {
+            addHeld(id, quantity);
+        }
+        taken[0] = quantity - fromHeld;
+        taken[1] = fromHeld;
+        return take;
+    }
+    
+    private void undoHot(Map<Long, int[]> hotTaken, boolean hold) {
+        for (Map.Entry<Long, int[]> line : hotTaken.entrySet()) {
+            int[] taken = line.getValue();
+            addHeld(line.getKey(), hold ? -taken[0] : taken[1]);
+            restockHot(line.getKey(), taken[0]);
+        }
+    }
+    
+    /* Gives units back to a hot product's counter, or to its stock if it was switched back meanwhile. */
+    private void restockHot(Long id, int units) {
+        if (units <= 0) {
+            return;
+        }
+        HotStockCounter counter = hotStock.get(id);
+        if (counter != null && counter.adjust(units)) {
+            return;
+        }
+        write(id, views -> {
+            Product product = products.get(id);
+            if (product == null) {
+                return null;
+            }
+            Product changed = product.copy();
+            changed.stock += units;
+            syncHotStock(changed);
+            store(changed, views);
+            return changed;
+        });
+    }
+    
+    /* Atomically takes up to {@code max} held units of the product; returns how many. */
+    private int claimHeld(Long productId, int max) {
+        int[] claimed = new int[1];
+        if (max > 0) {
+            heldUnits.computeIfPresent(productId, (id, held) -> {
+                claimed[0] = Math.min(held, max);
+                return held > claimed[0] ? held - claimed[0] : null;
+            });
+        }
+        return claimed[0];
+    }
+    
+    /*
+     * A hot product's live stock is its counter. A save carrying a stock other than
+     * the last published one is an explicit change and resets the counter; any other
+     * save keeps the counter's value. Called under the product's stripe lock, on
+     * the instance about to be stored.
+     */
+    private void syncHotStock(Product product) {
+        HotStockCounter counter = hotStock.get(product.id);
+        if (counter != null) {
+            if (product.stock != counter.published) {
+                counter.set(product.stock);
+            }
+            product.stock = (int) counter.snapshot();
+            counter.published = product.stock;
+        }
+    }
+    
+    private synchronized void startHotStockFlusher() {
+        if (hotStockFlusher != null) {
+            return;
+        }
+        hotStockFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hot-stock-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        hotStockFlusher.scheduleWithFixedDelay(this::flushHotStock,
+                HOT_STOCK_FLUSH_MILLIS, HOT_STOCK_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /* Publishes each hot counter that moved since the last flush as a regular save. */
+    private void flushHotStock() {
+        for (Long id : hotStock.keySet()) {
+            try {
+                write(id, views -> {
+                    HotStockCounter counter = hotStock.get(id);
+                    Product product = products.get(id);
+                    if (counter == null || product == null) {
+                        return null;
+                    }
+                    long stock = counter.snapshot();
+                    if (stock == counter.published) {
+                        return null;
+                    }
+                    Product changed = product.copy();
+                    changed.stock = (int) stock;
+                    counter.published = changed.stock;
+                    store(changed, views);
+                    return changed;
+                });
+            } catch (RuntimeException e) {
+                System.out.println("Hot stock flush failed for product " + id + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private int heldPart(Long productId, int quantity, Map<Long, Integer> fromHolds) {
+        Integer claimed = fromHolds.get(productId);
+        return claimed == null ? 0 : Math.min(quantity, Math.min(claimed, getHeldUnits(productId)));
+    }
+    
+    private void addHeld(Long productId, int units) {
+        if (units == 0) {
+            return;
+        }
+        heldUnits.compute(productId, (id, held) -> {
+            int total = (held == null ? 0 : held) + units;
+            return total > 0 ? total : null;
+        });
+    }
+    
+    private static void validateQuantities(Map<Long, Integer> quantities) {
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            if (line.getValue() == null || line.getValue() < 0) {
+                throw new IllegalArgumentException("Invalid quantity for product " + line.getKey() + ": " + line.getValue());
+            }
+        }
+    }
+    
+    private int[] sortedStripes(Map<Long, Integer> quantities) {
+        int[] stripes = new int[quantities.size()];
+        int count = 0;
+        for (Long id : quantities.keySet()) {
+            stripes[count++] = stripeOf(id);
+        }
+        Arrays.sort(stripes);
+        return stripes;
+    }
+    
+    /**
+     * Applies many stock changes in one pass: updates are grouped by stripe and each
+     * stripe lock is taken once, lines for the same product being applied in request
+     * order. The active flag follows the new stock, held units included. A line
+     * that would leave a negative stock is rejected without affecting the others.
+     */
+    public StockUpdateResult updateStock(List<StockUpdate> updates) {
+        long start = System.nanoTime();
+        StockUpdateResult.Item[] items = new StockUpdateResult.Item[updates.size()];
+        Map<ReentrantLock, List<Integer>> byStripe = new IdentityHashMap<>();
+        for (int i = 0; i < updates.size(); i++) {
+            StockUpdate update = updates.get(i);
+            if (update == null || update.productId == null || (update.quantity == null) == (update.delta == null)) {
+                items[i] = new StockUpdateResult.Item(update == null ? null : update.productId, StockUpdateResult.INVALID);
+            } else {
+                byStripe.computeIfAbsent(lockFor(update.productId), lock -> new ArrayList<>()).add(i);
+            }
+        }
+        
+        for (Map.Entry<ReentrantLock, List<Integer>> stripe : byStripe.entrySet()) {
+            ReentrantLock lock = stripe.getKey();
+            lock.lock();
+            writesStarted.incrementAndGet();
+            try {
+                ReadView[] views = readViews;
+                for (int i : stripe.getValue()) {
+                    items[i] = applyStockUpdate(updates.get(i), views);
+                }
+            } finally {
+                writesCompleted.incrementAndGet();
+                lock.unlock();
+            }
+        }
+        awaitDurable();
+        
+        StockUpdateResult result = new StockUpdateResult();
+        for (StockUpdateResult.Item item : items) {
+            if (StockUpdateResult.UPDATED.equals(item.status)) {
+                result.updated++;
+            } else {
+                result.failed++;
+            }
+            result.items.add(item);
+        }
+        long elapsed = System.nanoTime() - start;
+        result.elapsedMillis = elapsed / 1_000_000.0;
+        result.updatesPerSecond = elapsed == 0 ? 0 : result.updated * 1_000_000_000L / elapsed;
+        return result;
+    }
+    
+    /* Called with the product's stripe lock held. */
+    private StockUpdateResult.Item applyStockUpdate(StockUpdate update, ReadView[] views) {
+        Product product = products.get(update.productId);
+        if (product == null) {
+            return new StockUpdateResult.Item(update.productId, StockUpdateResult.NOT_FOUND);
+        }
+        // an absolute quantity is a shelf count: units held for carts are subtracted, and
+        // holds shrink when the shelf has fewer units than are held
+        int held = getHeldUnits(update.productId);
+        if (update.quantity != null && update.quantity >= 0 && update.quantity < held) {
+            addHeld(update.productId, update.quantity - held);
+            held = update.quantity;
+        }
+        long stock = update.quantity != null ? (long) update.quantity - held : (long) product.stock + update.delta;
+        HotStockCounter counter = hotStock.get(update.productId);
+        if (counter != null) {
+            // the counter holds the live stock, Product.stock may lag behind it
+            boolean applied = update.quantity != null ? counter.set(stock) : counter.adjust(update.delta);
+            stock = applied ? counter.snapshot() : -1;
+        }
+        if (stock < 0 || stock > Integer.MAX_VALUE) {
+            StockUpdateResult.Item item = new StockUpdateResult.Item(update.productId, StockUpdateResult.NEGATIVE_STOCK);
+            item.stock = product.stock;
+            item.active = product.isActive();
+            return item;
+        }
+        Product changed = product.copy();
+        changed.stock = (int) stock;
+        if (counter != null) {
+            counter.published = changed.stock;
+        }
+        changed.setActive(stock + held > 0);
+        store(changed, views);
+        StockUpdateResult.Item item = new StockUpdateResult.Item(update.productId, StockUpdateResult.UPDATED);
+        item.stock = changed.stock;
+        item.active = changed.isActive();
+        return item;
+    }
+    
+    private <T> T write(Long id, Function<ReadView[], T> action) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        writesStarted.incrementAndGet();
+        T result;
+        try {
+            result = action.apply(readViews);
+        } finally {
+            writesCompleted.incrementAndGet();
+            lock.unlock();
+        }
+        awaitDurable();
+        return result;
+    }
+    
+    /*
+     * With a WAL configured, a write is acknowledged once its records are fsynced.
+     * The wait happens after the stripe lock is released so that concurrent writers
+     * share the same fsync (group commit).
+     */
+    private void awaitDurable() {
+        ProductPersistence current = persistence;
+        if (current != null) {
+            current.awaitPendingWrites();
+        }
+    }
+    
+    /*
+     * A read is consistent when no write was in flight when it started and none
+     * started while it ran. After a few failed attempts we fall back to a read view,
+     * which does not block writers; {@code matches} then selects its products.
+     */
+    private Snapshot readConsistent(Supplier<List<Product>> reader, Predicate<Product> matches) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            long started = writesStarted.get();
+            if (writesCompleted.get() != started) {
+                Thread.onSpinWait();
+                continue;
+            }
+            List<Product> result = reader.get();
+            if (writesStarted.get() == started) {
+                return new Snapshot(started, result);
+            }
+        }
+        // a view read has no version of its own, so it is never reused by findAll
+        return new Snapshot(-1, readView(matches));
+    }
+    
+    /*
+     * Reads the catalog as of the moment the view is registered, in id order. Writes
+     * that read readViews after that record the stored instance they replace (see
+     * keepBeforeImage) and are left out; the ones that did not see the view still
+     * hold their stripes, so taking and releasing each stripe once waits for them.
+     * Writers are only delayed by that handover, never by the read itself.
+     */
+    private List<Product> readView(Predicate<Product> matches) {
+        ReadView view = new ReadView();
+        addReadView(view);
+        try {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+                lock.unlock();
+            }
+            List<Product> result = new ArrayList<>();
+            for (Product current : products.values(null)) {
+                Product before = view.before.get(current.id);
+                Product product = before == null ? current : before;
+                if (product != ABSENT && matches.test(product)) {
+                    result.add(product);
+                }
+            }
+            // products deleted after the view started may have been missed by the iteration
+            int iterated = result.size();
+            for (Product before : view.before.values()) {
+                if (before != ABSENT && matches.test(before) && indexOf(result, iterated, before.id) < 0) {
+                    result.add(before);
+                }
+            }
+            if (result.size() > iterated) {
+                result.sort(Comparator.comparing(product -> product.id));
+            }
+            return result;
+        } finally {
+            removeReadView(view);
+        }
+    }
+    
+    /* Binary search of the first {@code count} products, which are in id order. */
+    private static int indexOf(List<Product> products, int count, Long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = products.get(mid).id.compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    private synchronized void addReadView(ReadView view) {
+        ReadView[] current = readViews;
+        ReadView[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = view;
+        readViews = grown;
+    }
+    
+    private synchronized void removeReadView(ReadView view) {
+        List<ReadView> remaining = new ArrayList<>(Arrays.asList(readViews));
+        remaining.remove(view);
+        readViews = remaining.toArray(new ReadView[0]);
+    }
+    
+    /*
+     * Every store write goes through here, under the product's stripe lock.
+     * {@code product} is a fresh instance that nobody changes once stored.
+     */
+    private void store(Product product, ReadView[] views) {
+        keepBeforeImage(product.id, views);
+        products.put(product);
+        for (ProductListener listener : listeners) {
+            listener.productSaved(product);
+        }
+    }
+    
+    /* Hands the stored instance of {@code id} to the read views that started before this write. */
+    private void keepBeforeImage(Long id, ReadView[] views) {
+        if (views.length == 0) {
+            return;
+        }
+        Product current = products.get(id);
+        for (ReadView view : views) {
+            view.before.putIfAbsent(id, current == null ? ABSENT : current);
+        }
+    }
+    
+    private ReentrantLock lockFor(Long id) {
+        return locks[stripeOf(id)];
+    }
+    
+    private int stripeOf(Long id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return h & (LOCK_STRIPES - 1);
+    }
+    
+    /* Stripes must be sorted; duplicates are locked once. */
+    private void lockStripes(int[] stripes, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                locks[stripes[i]].lock();
+            }
+        }
+    }
+    
+    private void unlockStripes(int[] stripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+    
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+    
+    private void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+    
+    /* First stored instance of each product replaced or removed since the view started. */
+    private static class ReadView {
+        final Map<Long, Product> before = new ConcurrentHashMap<>();
+    }
+    
+    private static class Snapshot {
+        final long version;
+        final List<Product> products;
+        
+        Snapshot(long version, List<Product> products) {
+            this.version = version;
+            this.products = products;
         }
-        return false;
     }
 }
@@ -0,0 +1,137 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Full catalog snapshots ({@code snapshot-<sequence>.bin}) written next to the WAL.
+ * A snapshot is written to a temporary file and renamed, so a crash never leaves a
+ * half-written snapshot under the final name; a trailing CRC guards the rest.
+ */
+class ProductSnapshotStore {
+
+    private static final int MAGIC = 0x50534e31; // "PSN1"
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int KEEP = 2;
+
+    private final Path directory;
+
+    ProductSnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * {@code heldUnits} is added to each product's stock, so that stock held for
+     * carts (which does not survive a restart) is back on the shelf after recovery.
+     */
+    void write(long seq, Collection<Product> products, ToIntFunction<Long> heldUnits) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, seq, SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeLong(seq);
+            out.writeInt(products.size());
+            for (Product product : products) {
+                ProductCodec.write(out, product, product.stock + heldUnits.applyAsInt(product.id));
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> snapshots = snapshots();
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Loads the newest readable snapshot, falling back to older ones if it is damaged.
+     */
+    Loaded loadLatest() throws IOException {
+        List<Path> snapshots = snapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return read(snapshots.get(i));
+            } catch (IOException e) {
+                System.out.println("Snapshot " + snapshots.get(i).getFileName() + " is unreadable: " + e.getMessage());
+            }
+        }
+        return new Loaded(0, Collections.emptyList());
+    }
+
+    private Loaded read(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             CheckedInputStream checked = new CheckedInputStream(raw, crc)) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("bad magic");
+            }
+            long seq = in.readLong();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("bad product count " + count);
+            }
+            List<Product> products = new ArrayList<>(Math.min(count, 1 << 20));
+            for (int i = 0; i < count; i++) {
+                products.add(ProductCodec.read(in));
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(raw).readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+            return new Loaded(seq, products);
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    static class Loaded {
+        final long seq;
+        final List<Product> products;
+
+        Loaded(long seq, List<Product> products) {
+            this.seq = seq;
+            this.products = products;
+        }
+    }
+}
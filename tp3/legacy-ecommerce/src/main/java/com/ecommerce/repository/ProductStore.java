@@ -0,0 +1,25 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+/**
+ * Storage backend behind ProductRepository. The repository serializes writes per
+ * id with its stripe locks; a store must still tolerate concurrent writes to
+ * different ids and reads running alongside writes.
+ */
+interface ProductStore {
+
+    Product get(Long id);
+
+    void put(Product product);
+
+    Product remove(Long id);
+
+    int size();
+
+    /**
+     * Products with an id greater than {@code afterId} (every product when null),
+     * in id order. Weakly consistent with concurrent writes.
+     */
+    Iterable<Product> values(Long afterId);
+}
@@ -0,0 +1,61 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Version counters for HTTP caching. The catalog version is bumped on every
+ * mutation; each product remembers the catalog version of its last change, which
+ * makes a strong ETag for the product resource. Counters restart with the
+ * process, so ETags also carry an epoch (the start time): a tag handed out before
+ * a restart never matches a version of the new run.
+ */
+public class ProductVersions implements ProductListener {
+
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicReference<Version> catalog = new AtomicReference<>(new Version(epoch, 0, epoch));
+    private final Map<Long, Version> byId = new ConcurrentHashMap<>();
+
+    public Version catalogVersion() {
+        return catalog.get();
+    }
+
+    public Version versionOf(Long id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        byId.put(product.id, bump());
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        byId.remove(product.id);
+        bump();
+    }
+
+    private Version bump() {
+        long now = System.currentTimeMillis();
+        return catalog.updateAndGet(current -> new Version(epoch, current.version + 1, Math.max(now, current.lastModified)));
+    }
+
+    public static class Version {
+        public final long epoch;
+        public final long version;
+        public final long lastModified;
+
+        Version(long epoch, long version, long lastModified) {
+            this.epoch = epoch;
+            this.version = version;
+            this.lastModified = lastModified;
+        }
+
+        public String getETag() {
+            return "\"" + epoch + "-" + version + "\"";
+        }
+    }
+}
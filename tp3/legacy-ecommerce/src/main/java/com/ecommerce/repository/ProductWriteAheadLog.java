@@ -0,0 +1,289 @@
+package com.ecommerce.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of catalog mutations split in segment files
+ * ({@code wal-<first sequence>.log}). Appends are buffered and made durable by a
+ * single flusher thread that writes and fsyncs everything queued since its last
+ * pass (group commit); callers block in {@link #awaitDurable(long)}.
+ *
+ * Record layout: length (int), crc32 (int), then {@code length} bytes holding
+ * sequence (long), type (byte) and payload.
+ */
+class ProductWriteAheadLog implements AutoCloseable {
+
+    static final byte SAVE = 1;
+    static final byte DELETE = 2;
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final Object queueLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long pendingFirstSeq;
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private boolean closed;
+
+    private FileChannel segment;
+    private Thread flusher;
+
+    ProductWriteAheadLog(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Replays every intact record with a sequence greater than {@code afterSeq}, then
+     * opens a fresh segment for new appends. A torn or corrupted tail (crash during a
+     * write) ends the replay and is cut off.
+     */
+    long replay(long afterSeq, RecordHandler handler) throws IOException {
+        long lastSeq = afterSeq;
+        boolean corrupted = false;
+        for (Path file : segments()) {
+            if (corrupted) {
+                System.out.println("WAL: ignoring " + file.getFileName() + " after a corrupted segment");
+                Files.delete(file);
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long position = 0;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                while (true) {
+                    header.clear();
+                    if (readFully(channel, header, position) < HEADER_BYTES) {
+                        break;
+                    }
+                    header.flip();
+                    int length = header.getInt();
+                    int crc = header.getInt();
+                    if (length < 9 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    ByteBuffer body = ByteBuffer.allocate(length);
+                    if (readFully(channel, body, position + HEADER_BYTES) < length) {
+                        break;
+                    }
+                    CRC32 checksum = new CRC32();
+                    checksum.update(body.array(), 0, length);
+                    if ((int) checksum.getValue() != crc) {
+                        break;
+                    }
+                    body.flip();
+                    long seq = body.getLong();
+                    byte type = body.get();
+                    if (seq > lastSeq) {
+                        byte[] payload = new byte[body.remaining()];
+                        body.get(payload);
+                        handler.apply(seq, type, payload);
+                        lastSeq = seq;
+                    }
+                    position += HEADER_BYTES + length;
+                }
+                if (position < channel.size()) {
+                    corrupted = true;
+                    System.out.println("WAL: truncating corrupted tail of " + file.getFileName() + " at " + position);
+                    channel.truncate(position);
+                    channel.force(true);
+                }
+            }
+        }
+        synchronized (queueLock) {
+            appendedSeq = lastSeq;
+            durableSeq = lastSeq;
+        }
+        return lastSeq;
+    }
+
+    void start() throws IOException {
+        openSegment(appendedSeq + 1);
+        flusher = new Thread(this::flushLoop, "product-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    long append(byte type, byte[] payload) {
+        ByteBuffer body = ByteBuffer.allocate(9 + payload.length);
+        synchronized (queueLock) {
+            if (closed) {
+                throw new IllegalStateException("WAL is closed");
+            }
+            long seq = ++appendedSeq;
+            body.putLong(seq).put(type).put(payload);
+            CRC32 checksum = new CRC32();
+            checksum.update(body.array(), 0, body.capacity());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(body.capacity()).putInt((int) checksum.getValue());
+            if (pending.size() == 0) {
+                pendingFirstSeq = seq;
+            }
+            pending.write(header.array(), 0, HEADER_BYTES);
+            pending.write(body.array(), 0, body.capacity());
+            queueLock.notifyAll();
+            return seq;
+        }
+    }
+
+    void awaitDurable(long seq) {
+        synchronized (queueLock) {
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    throw new IllegalStateException("WAL write failed", failure);
+                }
+                try {
+                    queueLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for WAL fsync", e);
+                }
+            }
+        }
+    }
+
+    long lastAppendedSequence() {
+        synchronized (queueLock) {
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Deletes the segments whose records are all covered by a snapshot taken at
+     * {@code snapshotSeq}. The active segment is never deleted.
+     */
+    void deleteSegmentsUpTo(long snapshotSeq) throws IOException {
+        List<Path> files = segments();
+        for (int i = 0; i + 1 < files.size(); i++) {
+            long nextFirstSeq = firstSequence(files.get(i + 1));
+            if (nextFirstSeq > snapshotSeq + 1) {
+                break;
+            }
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            closed = true;
+            queueLock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long firstSeq;
+            long lastSeq;
+            synchronized (queueLock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                firstSeq = pendingFirstSeq;
+                lastSeq = appendedSeq;
+            }
+            try {
+                if (segment.size() >= segmentBytes) {
+                    segment.close();
+                    openSegment(firstSeq);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+                segment.force(false);
+                synchronized (queueLock) {
+                    durableSeq = lastSeq;
+                    queueLock.notifyAll();
+                }
+            } catch (IOException e) {
+                System.out.println("WAL write failed: " + e.getMessage());
+                synchronized (queueLock) {
+                    failure = e;
+                    queueLock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // directory fsync is not supported on every platform
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static long firstSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    interface RecordHandler {
+        void apply(long seq, byte type, byte[] payload) throws IOException;
+    }
+}
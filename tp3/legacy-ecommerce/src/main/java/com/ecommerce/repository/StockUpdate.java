@@ -0,0 +1,21 @@
+package com.ecommerce.repository;
+
+/**
+ * One line of a bulk stock update: either an absolute {@code quantity} or a
+ * {@code delta} added to the current stock.
+ */
+public class StockUpdate {
+
+    public Long productId;
+    public Integer quantity;
+    public Integer delta;
+
+    public StockUpdate() {
+    }
+
+    public StockUpdate(Long productId, Integer quantity, Integer delta) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.delta = delta;
+    }
+}
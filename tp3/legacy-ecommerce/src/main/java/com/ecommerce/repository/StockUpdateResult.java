@@ -0,0 +1,33 @@
+package com.ecommerce.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk stock update, one item per request line in request order.
+ */
+public class StockUpdateResult {
+
+    public static final String UPDATED = "UPDATED";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String INVALID = "INVALID";
+    public static final String NEGATIVE_STOCK = "NEGATIVE_STOCK";
+
+    public int updated;
+    public int failed;
+    public double elapsedMillis;
+    public long updatesPerSecond;
+    public List<Item> items = new ArrayList<>();
+
+    public static class Item {
+        public Long productId;
+        public String status;
+        public Integer stock;
+        public Boolean active;
+
+        Item(Long productId, String status) {
+            this.productId = productId;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.ecommerce.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the search vocabulary, used to find the indexed terms within
+ * a small edit distance of a misspelled query word. Each edit (an adjacent
+ * transposition included) changes at most four trigrams, so a term within k edits
+ * shares at least |grams| - 4k trigrams with the query; only those candidates are
+ * checked with a bounded Levenshtein where transpositions count as one edit. Work
+ * per query word is capped so the cost stays flat on large vocabularies. Not
+ * thread-safe: ProductSearchIndex guards it with its lock.
+ */
+class FuzzyTermIndex {
+
+    private static final int MAX_GRAM_TERMS = 50_000;
+    private static final int MAX_VERIFIED = 2_000;
+
+    private final Map<String, Set<String>> termsByGram = new HashMap<>();
+
+    void add(String term) {
+        for (String gram : grams(term)) {
+            termsByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(term);
+        }
+    }
+
+    void remove(String term) {
+        for (String gram : grams(term)) {
+            Set<String> terms = termsByGram.get(gram);
+            if (terms != null) {
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    termsByGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Edit distance allowed for a query word: none below 3 characters, one up to
+     * 5, two beyond.
+     */
+    static int maxEdits(String word) {
+        return word.length() < 3 ? 0 : word.length() < 6 ? 1 : 2;
+    }
+
+    /**
+     * Indexed terms within {@code maxEdits} of {@code word}, mapped to their distance.
+     */
+    Map<String, Integer> similarTerms(String word, int maxEdits) {
+        List<String> grams = new ArrayList<>(grams(word));
+        grams.sort((a, b) -> Integer.compare(size(a), size(b)));
+
+        // a skipped gram might have matched, so it lowers the threshold instead of counting
+        int threshold = grams.size() - 4 * maxEdits;
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            Set<String> terms = termsByGram.get(gram);
+            if (terms == null) {
+                continue;
+            }
+            if (terms.size() > MAX_GRAM_TERMS) {
+                threshold--;
+                continue;
+            }
+            for (String term : terms) {
+                if (Math.abs(term.length() - word.length()) <= maxEdits) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() >= Math.max(1, threshold)) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.size() > MAX_VERIFIED) {
+            candidates.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+            candidates = candidates.subList(0, MAX_VERIFIED);
+        }
+
+        Map<String, Integer> result = new HashMap<>();
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            int distance = distance(word, candidate.getKey(), maxEdits);
+            if (distance <= maxEdits) {
+                result.put(candidate.getKey(), distance);
+            }
+        }
+        return result;
+    }
+
+    private int size(String gram) {
+        Set<String> terms = termsByGram.get(gram);
+        return terms == null ? 0 : terms.size();
+    }
+
+    private static Set<String> grams(String term) {
+        String padded = "$" + term + "$";
+        if (padded.length() < 3) {
+            return Collections.singleton(padded);
+        }
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Optimal string alignment distance, giving up (returning max + 1) as soon as
+     * a whole row exceeds {@code max}.
+     */
+    static int distance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+}
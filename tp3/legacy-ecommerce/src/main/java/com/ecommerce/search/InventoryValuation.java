@@ -0,0 +1,16 @@
+package com.ecommerce.search;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stock valuation of the catalog: units in stock and price x stock, overall and
+ * per category.
+ */
+public class InventoryValuation {
+
+    public int productCount;
+    public long totalUnits;
+    public double totalValue;
+    public Map<String, Double> valueByCategory = new TreeMap<>();
+}
@@ -0,0 +1,367 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search-as-you-type over product names. Every word start of a normalized name is
+ * a key ("produit 12 maison", "12 maison", "maison") stored in a character trie
+ * capped at MAX_DEPTH characters. Each node caches the best TOP_K products of its
+ * subtree; a write only clears the caches on its own key paths and a lookup
+ * rebuilds a cleared node by merging the cached lists of its children, so
+ * answering a prefix never scans the catalog.
+ *
+ * Products are ranked by stock bucket (out of stock, then powers of two), ties
+ * by id. Selling a few units rarely moves a product to another bucket, so the
+ * common stock change is seen to be a no-op under the read lock and neither
+ * clears a cache nor waits for the write lock.
+ */
+public class ProductAutocomplete implements ProductListener {
+
+    public static final int MIN_PREFIX_LENGTH = 2;
+    public static final int TOP_K = 10;
+    private static final int MAX_DEPTH = 16;
+
+    private final Node root = new Node();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void productSaved(Product product) {
+        int bucket = stockBucket(product.stock);
+        lock.readLock().lock();
+        try {
+            Entry previous = entries.get(product.id);
+            if (previous != null && previous.bucket == bucket && Objects.equals(previous.name, product.name)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Set<String> keys = keys(product.name);
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.get(product.id);
+            if (previous != null && Objects.equals(previous.name, product.name)) {
+                if (previous.bucket != bucket) {
+                    previous.bucket = bucket;
+                    for (String key : previous.keys) {
+                        invalidate(key);
+                    }
+                }
+                return;
+            }
+            if (previous != null) {
+                unindex(product.id, previous);
+            }
+            Entry entry = new Entry(product.name, bucket, keys);
+            entries.put(product.id, entry);
+            for (String key : keys) {
+                insert(key, product.id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(product.id);
+            if (previous != null) {
+                unindex(product.id, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} (at most TOP_K) products whose name has a word sequence
+     * starting with {@code prefix}, best stocked first.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        String key = String.join(" ", TextNormalizer.tokenize(prefix));
+        if (key.length() < MIN_PREFIX_LENGTH) {
+            throw new IllegalArgumentException("prefix must have at least " + MIN_PREFIX_LENGTH + " characters");
+        }
+        limit = Math.min(limit, TOP_K);
+
+        lock.readLock().lock();
+        try {
+            Node node = find(key);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            if (node.top != null && key.length() <= MAX_DEPTH) {
+                return suggestions(node.top, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // cache cleared by a write, or a prefix longer than the trie: rebuild under the write lock
+        lock.writeLock().lock();
+        try {
+            Node node = find(key);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            if (key.length() <= MAX_DEPTH) {
+                return suggestions(top(node), limit);
+            }
+            return suggestions(longPrefix(node, key), limit);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 0 when out of stock, else 1 + the index of the highest bit: 1, 2-3, 4-7, 8-15... */
+    static int stockBucket(int stock) {
+        return stock <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(stock);
+    }
+
+    private static Set<String> keys(String name) {
+        List<String> tokens = TextNormalizer.tokenize(name);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String key = String.join(" ", tokens.subList(i, tokens.size()));
+            keys.add(key.length() > MAX_DEPTH ? key.substring(0, MAX_DEPTH) : key);
+        }
+        return keys;
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && i < MAX_DEPTH && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+
+    private void insert(String key, long id) {
+        Node node = root;
+        node.top = null;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.getOrAddChild(key.charAt(i));
+            node.top = null;
+        }
+        node.addId(id);
+    }
+
+    private void invalidate(String key) {
+        Node node = root;
+        node.top = null;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+            if (node != null) {
+                node.top = null;
+            }
+        }
+    }
+
+    private void unindex(long id, Entry entry) {
+        for (String key : entry.keys) {
+            remove(root, key, 0, id);
+        }
+    }
+
+    /** Returns true when {@code node} no longer holds anything and can be dropped. */
+    private boolean remove(Node node, String key, int depth, long id) {
+        node.top = null;
+        if (depth == key.length()) {
+            node.removeId(id);
+        } else {
+            Node child = node.child(key.charAt(depth));
+            if (child != null && remove(child, key, depth + 1, id)) {
+                node.removeChild(key.charAt(depth));
+            }
+        }
+        return node.idCount == 0 && node.labels.length == 0;
+    }
+
+    private long[] top(Node node) {
+        if (node.top != null) {
+            return node.top;
+        }
+        List<Long> candidates = new ArrayList<>();
+        for (int i = 0; i < node.idCount; i++) {
+            candidates.add(node.ids[i]);
+        }
+        for (Node child : node.children) {
+            for (long id : top(child)) {
+                candidates.add(id);
+            }
+        }
+        node.top = best(candidates);
+        return node.top;
+    }
+
+    /*
+     * Keys are truncated at MAX_DEPTH, so a longer prefix is answered from the
+     * whole (small) subtree and checked against the full names.
+     */
+    private long[] longPrefix(Node node, String key) {
+        Set<Long> candidates = new LinkedHashSet<>();
+        collect(node, candidates);
+        List<Long> matching = new ArrayList<>();
+        for (Long id : candidates) {
+            String name = " " + String.join(" ", TextNormalizer.tokenize(entries.get(id).name));
+            if (name.contains(" " + key)) {
+                matching.add(id);
+            }
+        }
+        return best(matching);
+    }
+
+    private void collect(Node node, Set<Long> out) {
+        for (int i = 0; i < node.idCount; i++) {
+            out.add(node.ids[i]);
+        }
+        for (Node child : node.children) {
+            collect(child, out);
+        }
+    }
+
+    private long[] best(List<Long> candidates) {
+        candidates.sort((a, b) -> {
+            int byStock = Integer.compare(entries.get(b).bucket, entries.get(a).bucket);
+            return byStock != 0 ? byStock : Long.compare(a, b);
+        });
+        long[] top = new long[TOP_K];
+        int count = 0;
+        Long last = null;
+        for (Long id : candidates) {
+            if (count == TOP_K) {
+                break;
+            }
+            // a product can reach a node through several of its keys; copies sort next to each other
+            if (!id.equals(last)) {
+                top[count++] = id;
+            }
+            last = id;
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    private List<Suggestion> suggestions(long[] top, int limit) {
+        List<Suggestion> result = new ArrayList<>(Math.min(limit, top.length));
+        for (int i = 0; i < top.length && result.size() < limit; i++) {
+            Entry entry = entries.get(top[i]);
+            if (entry != null) {
+                result.add(new Suggestion(top[i], entry.name));
+            }
+        }
+        return result;
+    }
+
+    private static class Entry {
+        final String name;
+        int bucket;
+        final Set<String> keys;
+
+        Entry(String name, int bucket, Set<String> keys) {
+            this.name = name;
+            this.bucket = bucket;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Trie node with sorted child labels. Ids are the products whose key ends
+     * here; {@code top} caches the best products of the subtree, null when stale.
+     */
+    private static class Node {
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final long[] NO_IDS = new long[0];
+
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        long[] ids = NO_IDS;
+        int idCount;
+        long[] top;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int at = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newLabels[at] = c;
+            newChildren[at] = new Node();
+            System.arraycopy(labels, at, newLabels, at + 1, labels.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[at];
+        }
+
+        void removeChild(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            if (at < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(labels, at + 1, newLabels, at, labels.length - at - 1);
+            System.arraycopy(children, at + 1, newChildren, at, children.length - at - 1);
+            labels = newLabels.length == 0 ? NO_LABELS : newLabels;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+
+        void addId(long id) {
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(2, idCount * 2));
+            }
+            ids[idCount++] = id;
+        }
+
+        void removeId(long id) {
+            for (int i = 0; i < idCount; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--idCount];
+                    return;
+                }
+            }
+        }
+    }
+
+    public static class Suggestion {
+        public final Long id;
+        public final String name;
+
+        Suggestion(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
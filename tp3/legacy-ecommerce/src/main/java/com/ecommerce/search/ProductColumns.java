@@ -0,0 +1,133 @@
+package com.ecommerce.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense primitive columns (id, price, stock, category code) indexed by a recycled
+ * product ordinal. Released ordinals are zeroed, so aggregates can run straight
+ * over [0, size()) without any liveness test and the JIT can unroll or vectorize
+ * the loops. Not thread-safe: ProductFacetIndex guards it with its lock.
+ */
+class ProductColumns {
+
+    static final int NO_CATEGORY = -1;
+
+    private final Map<Long, Integer> ordinalById = new HashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private int size;
+
+    long[] ids = new long[1024];
+    double[] prices = new double[1024];
+    int[] stocks = new int[1024];
+    int[] categoryCodes = new int[1024];
+
+    private final Map<String, Integer> categoryCodeByName = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+
+    /** Upper bound (exclusive) of the ordinals in use. */
+    int size() {
+        return size;
+    }
+
+    Integer ordinalOf(Long id) {
+        return ordinalById.get(id);
+    }
+
+    int allocate(Long id) {
+        int ordinal = freeOrdinals.isEmpty() ? size++ : freeOrdinals.pop();
+        if (ordinal >= ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        }
+        ordinalById.put(id, ordinal);
+        ids[ordinal] = id;
+        categoryCodes[ordinal] = NO_CATEGORY;
+        return ordinal;
+    }
+
+    Integer release(Long id) {
+        Integer ordinal = ordinalById.remove(id);
+        if (ordinal != null) {
+            prices[ordinal] = 0;
+            stocks[ordinal] = 0;
+            categoryCodes[ordinal] = NO_CATEGORY;
+            freeOrdinals.push(ordinal);
+        }
+        return ordinal;
+    }
+
+    int categoryCode(String category) {
+        Integer code = categoryCodeByName.get(category);
+        if (code == null) {
+            code = categoryNames.size();
+            categoryCodeByName.put(category, code);
+            categoryNames.add(category);
+        }
+        return code;
+    }
+
+    Integer existingCategoryCode(String category) {
+        return categoryCodeByName.get(category);
+    }
+
+    String categoryName(int code) {
+        return categoryNames.get(code);
+    }
+
+    int categoryCount() {
+        return categoryNames.size();
+    }
+
+    long totalUnits() {
+        int[] stocks = this.stocks;
+        long units = 0;
+        for (int i = 0; i < size; i++) {
+            units += stocks[i];
+        }
+        return units;
+    }
+
+    /**
+     * Stock value per category code; the last slot collects uncategorized products.
+     */
+    double[] valueByCategory() {
+        double[] prices = this.prices;
+        int[] stocks = this.stocks;
+        int[] codes = this.categoryCodes;
+        int uncategorized = categoryNames.size();
+        double[] values = new double[uncategorized + 1];
+        for (int i = 0; i < size; i++) {
+            int code = codes[i];
+            values[code < 0 ? uncategorized : code] += prices[i] * stocks[i];
+        }
+        return values;
+    }
+
+    /**
+     * Ordinals whose stock is at or below {@code threshold}. Released ordinals also
+     * have a zero stock, so the caller filters them with its live set.
+     */
+    int[] stockAtMost(int threshold) {
+        int[] stocks = this.stocks;
+        int[] hits = new int[16];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (stocks[i] <= threshold) {
+                if (count == hits.length) {
+                    hits = Arrays.copyOf(hits, count * 2);
+                }
+                hits[count++] = i;
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+}
@@ -0,0 +1,340 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap filter engine for the search page. Every product gets a dense ordinal;
+ * categories and availability are BitSets over those ordinals, prices live in a
+ * column plus a lazily sorted price index. Because ordinals are dense and recycled,
+ * plain BitSets stay compact (one bit per product and per category).
+ *
+ * The same price and stock columns answer inventory aggregates (stock valuation,
+ * low-stock scans) with flat loops instead of walking Product objects.
+ */
+public class ProductFacetIndex implements ProductListener {
+
+    private static final int NO_CATEGORY = ProductColumns.NO_CATEGORY;
+    private static final long MAX_PRICE_CENTS = 0xFFFFFFFFL;
+    private static final long ORDINAL_MASK = 0x7FFFFFFFL;
+
+    private final ProductColumns columns = new ProductColumns();
+
+    private final BitSet live = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private final List<BitSet> categoryBits = new ArrayList<>();
+
+    // (priceCents << 31 | ordinal), sorted; null when a price or membership changed
+    private volatile long[] sortedPriceKeys;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = columns.ordinalOf(product.id);
+            int ordinal = existing != null ? existing : allocate(product.id);
+            if (existing == null || columns.prices[ordinal] != product.price) {
+                columns.prices[ordinal] = product.price;
+                sortedPriceKeys = null;
+            }
+            columns.stocks[ordinal] = product.stock;
+            inStock.set(ordinal, product.stock > 0);
+
+            int code = product.category == null ? NO_CATEGORY : categoryCode(product.category);
+            int previous = columns.categoryCodes[ordinal];
+            if (existing == null || previous != code) {
+                if (existing != null && previous != NO_CATEGORY) {
+                    categoryBits.get(previous).clear(ordinal);
+                }
+                if (code != NO_CATEGORY) {
+                    categoryBits.get(code).set(ordinal);
+                }
+                columns.categoryCodes[ordinal] = code;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = columns.ordinalOf(product.id);
+            if (ordinal == null) {
+                return;
+            }
+            live.clear(ordinal);
+            inStock.clear(ordinal);
+            if (columns.categoryCodes[ordinal] != NO_CATEGORY) {
+                categoryBits.get(columns.categoryCodes[ordinal]).clear(ordinal);
+            }
+            columns.release(product.id);
+            sortedPriceKeys = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the filter and returns the ids of the first {@code filter.limit} hits
+     * in the requested order. Category counts ignore the category selection itself,
+     * so the facet list keeps showing the other categories.
+     */
+    public Hits filter(ProductFilter filter, Map<Long, Double> scores) {
+        if (filter.hasPriceRange() && !isNarrowed(filter, scores) && sortedPriceKeys == null) {
+            rebuildPriceIndex();
+        }
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) live.clone();
+            boolean narrowed = false;
+            if (scores != null) {
+                BitSet keywordHits = new BitSet();
+                for (Long id : scores.keySet()) {
+                    Integer ordinal = columns.ordinalOf(id);
+                    if (ordinal != null) {
+                        keywordHits.set(ordinal);
+                    }
+                }
+                matches.and(keywordHits);
+                narrowed = true;
+            }
+            if (filter.inStockOnly) {
+                matches.and(inStock);
+                narrowed = true;
+            }
+            if (filter.hasPriceRange()) {
+                double min = filter.minPrice != null ? filter.minPrice : Double.NEGATIVE_INFINITY;
+                double max = filter.maxPrice != null ? filter.maxPrice : Double.POSITIVE_INFINITY;
+                long[] keys = sortedPriceKeys;
+                double[] prices = columns.prices;
+                if (narrowed || keys == null) {
+                    for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+                        if (prices[ord] < min || prices[ord] > max) {
+                            matches.clear(ord);
+                        }
+                    }
+                } else {
+                    matches.and(priceRange(keys, min, max));
+                }
+            }
+
+            Map<String, Integer> counts = countByCategory(matches);
+
+            if (!filter.categories.isEmpty()) {
+                BitSet selected = new BitSet();
+                for (String category : filter.categories) {
+                    Integer code = columns.existingCategoryCode(category);
+                    if (code != null) {
+                        selected.or(categoryBits.get(code));
+                    }
+                }
+                matches.and(selected);
+            }
+
+            return new Hits(top(matches, filter, scores), matches.cardinality(), counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Units in stock and stock value (price x stock), overall and per category.
+     */
+    public InventoryValuation valuation() {
+        lock.readLock().lock();
+        try {
+            InventoryValuation valuation = new InventoryValuation();
+            valuation.productCount = live.cardinality();
+            valuation.totalUnits = columns.totalUnits();
+            double[] byCategory = columns.valueByCategory();
+            for (int code = 0; code < byCategory.length; code++) {
+                valuation.totalValue += byCategory[code];
+                if (code < columns.categoryCount() && !categoryBits.get(code).isEmpty()) {
+                    valuation.valueByCategory.put(columns.categoryName(code), byCategory[code]);
+                }
+            }
+            return valuation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the products with a stock at or below {@code threshold}, lowest stock
+     * first, at most {@code limit} of them.
+     */
+    public List<Long> lowStock(int threshold, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] stocks = columns.stocks;
+            long[] ids = columns.ids;
+            List<Integer> hits = new ArrayList<>();
+            for (int ord : columns.stockAtMost(threshold)) {
+                if (live.get(ord)) {
+                    hits.add(ord);
+                }
+            }
+            hits.sort(Comparator.comparingInt((Integer ord) -> stocks[ord]).thenComparingLong(ord -> ids[ord]));
+            List<Long> result = new ArrayList<>(Math.min(limit, hits.size()));
+            for (int i = 0; i < hits.size() && i < limit; i++) {
+                result.add(ids[hits.get(i)]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isNarrowed(ProductFilter filter, Map<Long, Double> scores) {
+        return scores != null || filter.inStockOnly;
+    }
+
+    private List<Long> top(BitSet matches, ProductFilter filter, Map<Long, Double> scores) {
+        double[] prices = columns.prices;
+        long[] idByOrdinal = columns.ids;
+        Comparator<Integer> order;
+        if (ProductFilter.SORT_PRICE_ASC.equals(filter.sort)) {
+            order = Comparator.comparingDouble((Integer ord) -> prices[ord]);
+        } else if (ProductFilter.SORT_PRICE_DESC.equals(filter.sort)) {
+            order = Comparator.comparingDouble((Integer ord) -> -prices[ord]);
+        } else if (scores != null) {
+            order = Comparator.comparingDouble((Integer ord) -> -scores.get(idByOrdinal[ord]));
+        } else {
+            order = (a, b) -> 0;
+        }
+        order = order.thenComparingLong(ord -> idByOrdinal[ord]);
+
+        int limit = Math.max(filter.limit, 0);
+        if (limit == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+            heap.offer(ord);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ids.add(idByOrdinal[heap.poll()]);
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    private Map<String, Integer> countByCategory(BitSet matches) {
+        int[] categoryCodes = columns.categoryCodes;
+        int[] counts = new int[columns.categoryCount()];
+        for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+            if (categoryCodes[ord] != NO_CATEGORY) {
+                counts[categoryCodes[ord]]++;
+            }
+        }
+        Map<String, Integer> result = new TreeMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(columns.categoryName(code), counts[code]);
+            }
+        }
+        return result;
+    }
+
+    private BitSet priceRange(long[] keys, double min, double max) {
+        long fromKey = priceCents(Math.max(min, 0), false) << 31;
+        long toKey = (priceCents(max, true) << 31) | ORDINAL_MASK;
+        double[] prices = columns.prices;
+        BitSet range = new BitSet();
+        for (int i = lowerBound(keys, fromKey); i < keys.length && keys[i] <= toKey; i++) {
+            int ord = (int) (keys[i] & ORDINAL_MASK);
+            // cents are rounded, the exact comparison is done on the column
+            if (prices[ord] >= min && prices[ord] <= max) {
+                range.set(ord);
+            }
+        }
+        return range;
+    }
+
+    private void rebuildPriceIndex() {
+        lock.writeLock().lock();
+        try {
+            if (sortedPriceKeys != null) {
+                return;
+            }
+            long[] keys = new long[live.cardinality()];
+            double[] prices = columns.prices;
+            int i = 0;
+            for (int ord = live.nextSetBit(0); ord >= 0; ord = live.nextSetBit(ord + 1)) {
+                keys[i++] = (priceCents(prices[ord], false) << 31) | ord;
+            }
+            Arrays.sort(keys);
+            sortedPriceKeys = keys;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long priceCents(double price, boolean roundUp) {
+        if (price <= 0) {
+            return 0;
+        }
+        double cents = roundUp ? Math.ceil(price * 100) : Math.floor(price * 100);
+        return cents >= MAX_PRICE_CENTS ? MAX_PRICE_CENTS : (long) cents;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int allocate(Long id) {
+        int ordinal = columns.allocate(id);
+        live.set(ordinal);
+        return ordinal;
+    }
+
+    private int categoryCode(String category) {
+        int code = columns.categoryCode(category);
+        if (code == categoryBits.size()) {
+            categoryBits.add(new BitSet());
+        }
+        return code;
+    }
+
+    public static class Hits {
+        public final List<Long> ids;
+        public final int total;
+        public final Map<String, Integer> categoryCounts;
+
+        Hits(List<Long> ids, int total, Map<String, Integer> categoryCounts) {
+            this.ids = ids;
+            this.total = total;
+            this.categoryCounts = categoryCounts;
+        }
+    }
+}
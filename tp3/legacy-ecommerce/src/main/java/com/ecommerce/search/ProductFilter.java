@@ -0,0 +1,45 @@
+package com.ecommerce.search;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Criteria of a filtered product search (tp1 search page: keyword, categories,
+ * price range, in stock only, sort).
+ */
+public class ProductFilter {
+
+    public static final String SORT_RELEVANCE = "relevance";
+    public static final String SORT_PRICE_ASC = "price_asc";
+    public static final String SORT_PRICE_DESC = "price_desc";
+    /** Same cap as the other paged product endpoints. */
+    public static final int MAX_LIMIT = 1000;
+
+    public String query;
+    public Set<String> categories = new HashSet<>();
+    public Double minPrice;
+    public Double maxPrice;
+    public boolean inStockOnly;
+    public String sort = SORT_RELEVANCE;
+    public int limit = 50;
+
+    public boolean hasQuery() {
+        return query != null && !query.trim().isEmpty();
+    }
+
+    public boolean hasPriceRange() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    public void validate() {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new IllegalArgumentException("minPrice must be lower than or equal to maxPrice");
+        }
+        if (!SORT_RELEVANCE.equals(sort) && !SORT_PRICE_ASC.equals(sort) && !SORT_PRICE_DESC.equals(sort)) {
+            throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+    }
+}
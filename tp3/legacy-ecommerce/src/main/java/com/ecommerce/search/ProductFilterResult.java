@@ -0,0 +1,15 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ProductFilterResult {
+
+    public int total;
+    public List<Product> products = new ArrayList<>();
+    public Map<String, Integer> categoryCounts = new TreeMap<>();
+}
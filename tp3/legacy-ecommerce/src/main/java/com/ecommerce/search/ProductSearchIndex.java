@@ -0,0 +1,560 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over product name and description, ranked with BM25.
+ * Kept up to date by ProductRepository through the ProductListener callbacks.
+ * In fuzzy mode each query word also matches the indexed terms within one or two
+ * edits (see FuzzyTermIndex), with a lower weight than an exact match.
+ *
+ * Products get dense doc numbers; a posting is two int arrays (doc numbers in
+ * increasing order, term frequencies) plus the largest frequency and shortest
+ * document it has seen, which bound the score any of its documents can get from
+ * the term. search() uses those bounds for MaxScore top-k: once the k-th best
+ * score is higher than what the rarer query terms can add up to, documents only
+ * matching those terms are skipped and their postings are only probed (binary
+ * search) for documents that can still make it.
+ */
+public class ProductSearchIndex implements ProductListener {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int NAME_WEIGHT = 2;
+    private static final double[] FUZZY_WEIGHTS = {1.0, 0.6, 0.3};
+    private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final Map<Long, IndexedDoc> docs = new HashMap<>();
+    private long[] productIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private int[] freeDocs = new int[16];
+    private int freeCount;
+    private int nextDoc;
+    private long totalLength;
+    private final FuzzyTermIndex vocabulary = new FuzzyTermIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void productSaved(Product product) {
+        long textHash = textHash(product);
+        lock.readLock().lock();
+        try {
+            IndexedDoc previous = docs.get(product.id);
+            if (previous != null && previous.textHash == textHash) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // tokenize outside the write lock, the repository never saves the same id concurrently
+        Map<String, Integer> freqs = new HashMap<>();
+        int length = 0;
+        for (String token : TextNormalizer.tokenize(product.name)) {
+            freqs.merge(token, NAME_WEIGHT, Integer::sum);
+            length += NAME_WEIGHT;
+        }
+        for (String token : TextNormalizer.tokenize(product.description)) {
+            freqs.merge(token, 1, Integer::sum);
+            length++;
+        }
+
+        lock.writeLock().lock();
+        try {
+            IndexedDoc previous = docs.get(product.id);
+            if (previous != null) {
+                unindex(product.id, previous);
+            }
+            index(product.id, freqs, length, textHash);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Product product) {
+        lock.writeLock().lock();
+        try {
+            IndexedDoc previous = docs.get(product.id);
+            if (previous != null) {
+                unindex(product.id, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the best matching products, most relevant first.
+     */
+    public List<Long> search(String query, int limit) {
+        return search(query, limit, false);
+    }
+
+    public List<Long> search(String query, int limit, boolean fuzzy) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> words = new LinkedHashSet<>(TextNormalizer.tokenize(query));
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TopK top;
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) {
+                return Collections.emptyList();
+            }
+            // never more hits than documents, whatever the caller asked for
+            top = new TopK(Math.min(limit, docs.size()));
+            List<Cursor> cursors = cursors(words, fuzzy);
+            cursors.sort(Comparator.comparingDouble(cursor -> cursor.bound));
+            maxScore(cursors, top);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top.ids();
+    }
+
+    /**
+     * Returns the BM25 score of every product matching at least one query term.
+     */
+    public Map<Long, Double> score(String query) {
+        return score(query, false);
+    }
+
+    public Map<Long, Double> score(String query, boolean fuzzy) {
+        Set<String> words = new LinkedHashSet<>(TextNormalizer.tokenize(query));
+        Map<Long, Double> scores = new HashMap<>();
+        if (words.isEmpty()) {
+            return scores;
+        }
+        lock.readLock().lock();
+        try {
+            List<Cursor> cursors = cursors(words, fuzzy);
+            for (int doc = nextDoc(cursors, 0); doc != NO_MORE_DOCS; doc = nextDoc(cursors, 0)) {
+                scores.put(productIds[doc], scoreAt(cursors, 0, doc));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return scores;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* One cursor per query word. Called under the read lock. */
+    private List<Cursor> cursors(Set<String> words, boolean fuzzy) {
+        int docCount = docs.size();
+        double avgLength = docCount == 0 ? 0 : (double) totalLength / docCount;
+        List<Cursor> cursors = new ArrayList<>(words.size());
+        for (String word : words) {
+            int maxEdits = fuzzy ? FuzzyTermIndex.maxEdits(word) : 0;
+            if (maxEdits == 0) {
+                Posting posting = postings.get(word);
+                if (posting != null) {
+                    cursors.add(new TermCursor(posting, FUZZY_WEIGHTS[0] * idf(posting, docCount), avgLength));
+                }
+                continue;
+            }
+            // a product keeps its best match for the word, not the sum over its variants
+            ScoredCursor merged = null;
+            for (Map.Entry<String, Integer> variant : vocabulary.similarTerms(word, maxEdits).entrySet()) {
+                Posting posting = postings.get(variant.getKey());
+                if (posting != null) {
+                    double weight = FUZZY_WEIGHTS[variant.getValue()] * idf(posting, docCount);
+                    merged = ScoredCursor.max(merged, new TermCursor(posting, weight, avgLength));
+                }
+            }
+            if (merged != null) {
+                cursors.add(merged);
+            }
+        }
+        return cursors;
+    }
+
+    /*
+     * Document-at-a-time MaxScore. Cursors are sorted by bound; prefix[i] is the sum
+     * of the bounds of cursors 0..i. Cursors below {@code essential} cannot lift a
+     * document into the top k on their own, so only the others pick the candidate
+     * documents, and the non-essential ones are probed for a candidate only while
+     * it can still beat the current k-th score.
+     */
+    private void maxScore(List<Cursor> cursors, TopK top) {
+        int n = cursors.size();
+        double[] prefix = new double[n];
+        for (int i = 0; i < n; i++) {
+            prefix[i] = (i == 0 ? 0 : prefix[i - 1]) + cursors.get(i).bound;
+        }
+        int essential = 0;
+        for (int doc = nextDoc(cursors, essential); doc != NO_MORE_DOCS; doc = nextDoc(cursors, essential)) {
+            double score = scoreAt(cursors, essential, doc);
+            for (int i = essential - 1; i >= 0; i--) {
+                if (top.isFull() && score + prefix[i] < top.threshold()) {
+                    break;
+                }
+                Cursor cursor = cursors.get(i);
+                cursor.advanceTo(doc);
+                if (cursor.doc() == doc) {
+                    score += cursor.score();
+                    cursor.index++;
+                }
+            }
+            if (top.offer(productIds[doc], score)) {
+                while (essential < n && top.isFull() && prefix[essential] < top.threshold()) {
+                    essential++;
+                }
+            }
+        }
+    }
+
+    private static int nextDoc(List<Cursor> cursors, int from) {
+        int doc = NO_MORE_DOCS;
+        for (int i = from; i < cursors.size(); i++) {
+            doc = Math.min(doc, cursors.get(i).doc());
+        }
+        return doc;
+    }
+
+    /* Sums the cursors from {@code from} that are on {@code doc} and moves them past it. */
+    private static double scoreAt(List<Cursor> cursors, int from, int doc) {
+        double score = 0;
+        for (int i = from; i < cursors.size(); i++) {
+            Cursor cursor = cursors.get(i);
+            if (cursor.doc() == doc) {
+                score += cursor.score();
+                cursor.index++;
+            }
+        }
+        return score;
+    }
+
+    private static double idf(Posting posting, int docCount) {
+        return Math.log(1 + (docCount - posting.size + 0.5) / (posting.size + 0.5));
+    }
+
+    /* BM25 term frequency part; grows with tf and shrinks with the document length. */
+    private static double tfPart(int tf, int length, double avgLength) {
+        double norm = K1 * (1 - B + B * length / avgLength);
+        return tf * (K1 + 1) / (tf + norm);
+    }
+
+    private void index(Long id, Map<String, Integer> freqs, int length, long textHash) {
+        int doc = allocateDoc(id, length);
+        String[] terms = new String[freqs.size()];
+        int t = 0;
+        for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> {
+                vocabulary.add(k);
+                return new Posting();
+            }).add(doc, entry.getValue(), length);
+            terms[t++] = entry.getKey();
+        }
+        docs.put(id, new IndexedDoc(doc, terms, length, textHash));
+        totalLength += length;
+    }
+
+    private void unindex(Long id, IndexedDoc doc) {
+        for (String term : doc.terms) {
+            Posting posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(doc.doc);
+                if (posting.size == 0) {
+                    postings.remove(term);
+                    vocabulary.remove(term);
+                }
+            }
+        }
+        docs.remove(id);
+        totalLength -= doc.length;
+        if (freeCount == freeDocs.length) {
+            freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+        }
+        freeDocs[freeCount++] = doc.doc;
+    }
+
+    private int allocateDoc(Long id, int length) {
+        int doc = freeCount > 0 ? freeDocs[--freeCount] : nextDoc++;
+        if (doc == productIds.length) {
+            productIds = Arrays.copyOf(productIds, doc * 2);
+            lengths = Arrays.copyOf(lengths, doc * 2);
+        }
+        productIds[doc] = id;
+        lengths[doc] = length;
+        return doc;
+    }
+
+    /* 64-bit FNV-1a of name and description, each prefixed by its length (null apart). */
+    private static long textHash(Product product) {
+        return hash(hash(FNV_OFFSET, product.name), product.description);
+    }
+
+    private static long hash(long h, String text) {
+        h = (h ^ (text == null ? -1 : text.length())) * FNV_PRIME;
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                h = (h ^ text.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return h;
+    }
+
+    /*
+     * Only what unindexing and change detection need: the product's terms and a
+     * fingerprint of its text, not the text itself.
+     */
+    private static class IndexedDoc {
+        final int doc;
+        final String[] terms;
+        final int length;
+        final long textHash;
+
+        IndexedDoc(int doc, String[] terms, int length, long textHash) {
+            this.doc = doc;
+            this.terms = terms;
+            this.length = length;
+            this.textHash = textHash;
+        }
+    }
+
+    /*
+     * Doc numbers in increasing order with their term frequencies. maxFreq and
+     * minLength are not lowered by removals: they may overestimate the bound,
+     * which is safe, never underestimate it.
+     */
+    private static final class Posting {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+        int maxFreq;
+        int minLength = Integer.MAX_VALUE;
+
+        void add(int doc, int freq, int length) {
+            int i = -Arrays.binarySearch(docs, 0, size, doc) - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            System.arraycopy(docs, i, docs, i + 1, size - i);
+            System.arraycopy(freqs, i, freqs, i + 1, size - i);
+            docs[i] = doc;
+            freqs[i] = freq;
+            size++;
+            maxFreq = Math.max(maxFreq, freq);
+            minLength = Math.min(minLength, length);
+        }
+
+        void remove(int doc) {
+            int i = Arrays.binarySearch(docs, 0, size, doc);
+            if (i >= 0) {
+                System.arraycopy(docs, i + 1, docs, i, size - i - 1);
+                System.arraycopy(freqs, i + 1, freqs, i, size - i - 1);
+                size--;
+            }
+        }
+    }
+
+    private abstract static class Cursor {
+        final int[] docs;
+        final int size;
+        final double bound;
+        int index;
+
+        Cursor(int[] docs, int size, double bound) {
+            this.docs = docs;
+            this.size = size;
+            this.bound = bound;
+        }
+
+        int doc() {
+            return index < size ? docs[index] : NO_MORE_DOCS;
+        }
+
+        void advanceTo(int target) {
+            if (index < size && docs[index] < target) {
+                int i = Arrays.binarySearch(docs, index, size, target);
+                index = i >= 0 ? i : -i - 1;
+            }
+        }
+
+        /* Score of the current document. */
+        abstract double score();
+    }
+
+    /* Walks a posting, scoring documents as it reaches them. */
+    private final class TermCursor extends Cursor {
+        private final int[] freqs;
+        private final double weight;
+        private final double avgLength;
+
+        TermCursor(Posting posting, double weight, double avgLength) {
+            super(posting.docs, posting.size, weight * tfPart(posting.maxFreq, posting.minLength, avgLength));
+            this.freqs = posting.freqs;
+            this.weight = weight;
+            this.avgLength = avgLength;
+        }
+
+        @Override
+        double score() {
+            return weight * tfPart(freqs[index], lengths[docs[index]], avgLength);
+        }
+    }
+
+    /* Documents with precomputed scores: the variants of a fuzzy word, merged. */
+    private static final class ScoredCursor extends Cursor {
+        private final double[] scores;
+
+        ScoredCursor(int[] docs, double[] scores, int size, double bound) {
+            super(docs, size, bound);
+            this.scores = scores;
+        }
+
+        @Override
+        double score() {
+            return scores[index];
+        }
+
+        /* Union of the two, a document present in both keeping the higher score. */
+        static ScoredCursor max(ScoredCursor a, Cursor b) {
+            int capacity = (a == null ? 0 : a.size) + b.size;
+            int[] docs = new int[capacity];
+            double[] scores = new double[capacity];
+            int size = 0;
+            double bound = 0;
+            while (b.doc() != NO_MORE_DOCS || (a != null && a.doc() != NO_MORE_DOCS)) {
+                int doc = Math.min(b.doc(), a == null ? NO_MORE_DOCS : a.doc());
+                double score = 0;
+                if (a != null && a.doc() == doc) {
+                    score = a.score();
+                    a.index++;
+                }
+                if (b.doc() == doc) {
+                    score = Math.max(score, b.score());
+                    b.index++;
+                }
+                docs[size] = doc;
+                scores[size++] = score;
+                bound = Math.max(bound, score);
+            }
+            return new ScoredCursor(docs, scores, size, bound);
+        }
+    }
+
+    /* The k best (product id, score) pairs: a min-heap on score, the larger id first out on ties. */
+    private static final class TopK {
+        private final long[] ids;
+        private final double[] scores;
+        private int size;
+
+        TopK(int k) {
+            ids = new long[k];
+            scores = new double[k];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        double threshold() {
+            return scores[0];
+        }
+
+        /* Returns true when the pair was kept. */
+        boolean offer(long id, double score) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                siftUp(size++);
+                return true;
+            }
+            if (!worse(ids[0], scores[0], id, score)) {
+                return false;
+            }
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+
+        /* Ids from best to worst. */
+        List<Long> ids() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> worse(ids[a], scores[a], ids[b], scores[b]) ? 1
+                    : worse(ids[b], scores[b], ids[a], scores[a]) ? -1 : 0);
+            List<Long> result = new ArrayList<>(size);
+            for (int i : order) {
+                result.add(ids[i]);
+            }
+            return result;
+        }
+
+        private static boolean worse(long id, double score, long otherId, double otherScore) {
+            int cmp = Double.compare(score, otherScore);
+            return cmp != 0 ? cmp < 0 : id > otherId;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(ids[i], scores[i], ids[parent], scores[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    return;
+                }
+                if (child + 1 < size && worse(ids[child + 1], scores[child + 1], ids[child], scores[child])) {
+                    child++;
+                }
+                if (!worse(ids[child], scores[child], ids[i], scores[i])) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+    }
+}
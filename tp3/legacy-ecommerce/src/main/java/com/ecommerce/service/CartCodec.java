@@ -0,0 +1,103 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Product;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ * Compact binary form of a Cart for the disk tier. Lines keep the product id only;
+ * reading resolves the products again, drops lines whose product is gone and
+ * prices the others at the current price, as adding to the cart would.
+ */
+final class CartCodec {
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final int MAX_LINES = 1 << 20;
+
+    private CartCodec() {
+    }
+
+    static void write(DataOutput out, Cart cart) throws IOException {
+        out.writeLong(cart.id);
+        out.writeLong(cart.userId == null ? NULL_LONG : cart.userId);
+        writeDate(out, cart.createdAt);
+        writeDate(out, cart.updatedAt);
+        writeString(out, cart.status);
+        out.writeInt(cart.getItems().size());
+        for (Cart.CartItem item : cart.getItems()) {
+            out.writeLong(item.product.id);
+            out.writeInt(item.quantity);
+            out.writeLong(item.id == null ? NULL_LONG : item.id);
+            writeString(out, item.notes);
+        }
+    }
+
+    static Cart read(DataInput in, Function<Long, Product> products) throws IOException {
+        Cart cart = new Cart();
+        cart.id = in.readLong();
+        long userId = in.readLong();
+        cart.userId = userId == NULL_LONG ? null : userId;
+        Date createdAt = readDate(in);
+        Date updatedAt = readDate(in);
+        cart.status = readString(in);
+        int lines = in.readInt();
+        if (lines < 0 || lines > MAX_LINES) {
+            throw new IOException("Corrupted line count: " + lines);
+        }
+        for (int i = 0; i < lines; i++) {
+            long productId = in.readLong();
+            int quantity = in.readInt();
+            long itemId = in.readLong();
+            String notes = readString(in);
+            Product product = products.apply(productId);
+            if (product != null) {
+                cart.addItem(product, quantity);
+                Cart.CartItem item = cart.getItem(product.id);
+                item.id = itemId == NULL_LONG ? null : itemId;
+                item.notes = notes;
+            }
+        }
+        cart.createdAt = createdAt;
+        cart.updatedAt = updatedAt;
+        return cart;
+    }
+
+    private static void writeDate(DataOutput out, Date date) throws IOException {
+        out.writeLong(date == null ? NULL_LONG : date.getTime());
+    }
+
+    private static Date readDate(DataInput in) throws IOException {
+        long time = in.readLong();
+        return time == NULL_LONG ? null : new Date(time);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupted string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ecommerce.service;
+
+/**
+ * One operation of a batch cart edit: add {@code quantity} units of a product,
+ * set its line to {@code quantity} units (0 removes it) or remove its line.
+ */
+public class CartOperation {
+
+    public static final String ADD = "ADD";
+    public static final String SET = "SET";
+    public static final String REMOVE = "REMOVE";
+
+    public String type;
+    public Long productId;
+    public Integer quantity;
+
+    public CartOperation() {
+    }
+
+    public CartOperation(String type, Long productId, Integer quantity) {
+        this.type = type;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+}
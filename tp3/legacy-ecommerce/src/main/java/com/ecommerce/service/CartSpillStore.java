@@ -0,0 +1,474 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Product;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Disk tier of the CartStore: carts pushed out of memory are appended in CartCodec
+ * form to segment files ({@code carts-<n>.seg}) and an off-heap hash table maps
+ * each cart id to its record, so the heap does not grow with the number of carts
+ * on disk. Taking a cart back is two positional reads (header, then body) and a
+ * tombstone append, so that a restart does not bring it back as well.
+ *
+ * On startup the segments are scanned to rebuild the table; carts on disk thus
+ * survive restarts. A compactor thread copies the live records of sealed segments
+ * that are mostly garbage (or entirely past the TTL) forward and deletes them.
+ * Writes are not fsynced: a crash loses at most the carts spilled last, the way it
+ * loses every cart held in memory.
+ *
+ * Record layout: length (int), crc32 (int), then {@code length} bytes holding cart
+ * id (long), type (byte), time (long) and payload.
+ */
+class CartSpillStore implements AutoCloseable {
+
+    private static final byte CART = 1;
+    private static final byte REMOVED = 2;
+
+    private static final String PREFIX = "carts-";
+    private static final String SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 8;
+    private static final int BODY_HEADER_BYTES = 17;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+    private static final long COMPACT_MILLIS = 10_000;
+    private static final int OFFSET_BITS = 40;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long ttlMillis;
+    private final Function<Long, Product> products;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private LocationTable index = new LocationTable(1 << 12);
+    private Segment active;
+    private long maxCartId;
+    private long written;
+    private long taken;
+    private long dropped;
+    private ScheduledExecutorService compactor;
+
+    CartSpillStore(Path directory, long segmentBytes, long ttlMillis, Function<Long, Product> products) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.ttlMillis = ttlMillis;
+        this.products = products;
+        Files.createDirectories(directory);
+        recover();
+        openSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-spill-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, COMPACT_MILLIS, COMPACT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void write(Cart cart) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        CartCodec.write(new DataOutputStream(bytes), cart);
+        long time = cart.updatedAt != null ? cart.updatedAt.getTime() : System.currentTimeMillis();
+        long location = append(cart.id, CART, time, bytes.toByteArray());
+        forget(cart.id);
+        put(cart.id, location, HEADER_BYTES + BODY_HEADER_BYTES + bytes.size());
+        maxCartId = Math.max(maxCartId, cart.id);
+        written++;
+    }
+
+    /** Removes the cart from disk and returns it, or null when it is not there (or expired). */
+    synchronized Cart take(Long cartId) throws IOException {
+        long location = index.get(cartId);
+        if (location == 0) {
+            return null;
+        }
+        ByteBuffer body = readBody(location);
+        body.getLong();
+        body.get();
+        long time = body.getLong();
+        append(cartId, REMOVED, System.currentTimeMillis(), new byte[0]);
+        forget(cartId);
+        if (isExpired(time, System.currentTimeMillis())) {
+            dropped++;
+            return null;
+        }
+        taken++;
+        return CartCodec.read(new DataInputStream(new ByteArrayInputStream(
+                body.array(), body.position(), body.remaining())), products);
+    }
+
+    synchronized void remove(Long cartId) throws IOException {
+        if (index.get(cartId) != 0) {
+            append(cartId, REMOVED, System.currentTimeMillis(), new byte[0]);
+            forget(cartId);
+        }
+    }
+
+    synchronized long maxCartId() {
+        return maxCartId;
+    }
+
+    synchronized Map<String, Object> stats() {
+        long bytes = 0;
+        long live = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.size;
+            live += segment.liveBytes;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("spilledCarts", index.count);
+        stats.put("spillSegments", segments.size());
+        stats.put("spillBytes", bytes);
+        stats.put("spillLiveBytes", live);
+        stats.put("spillOffHeapIndexBytes", index.capacity() * 16L);
+        stats.put("spillWritten", written);
+        stats.put("spillTaken", taken);
+        stats.put("spillExpired", dropped);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    /* Rebuilds the index from the segments, oldest first; a torn tail is cut off. */
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        long now = System.currentTimeMillis();
+        for (Path file : files) {
+            Segment segment = new Segment(number(file), file,
+                    FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(segment.number, segment);
+            long position = 0;
+            ByteBuffer body;
+            while ((body = readRecord(segment, position)) != null) {
+                int recordBytes = HEADER_BYTES + body.remaining();
+                long cartId = body.getLong();
+                byte type = body.get();
+                long time = body.getLong();
+                forget(cartId);
+                if (type == CART && !isExpired(time, now)) {
+                    put(cartId, location(segment.number, position), recordBytes);
+                }
+                segment.maxTime = Math.max(segment.maxTime, time);
+                maxCartId = Math.max(maxCartId, cartId);
+                position += recordBytes;
+            }
+            segment.size = position;
+            if (position < segment.channel.size()) {
+                System.out.println("Cart spill: truncating corrupted tail of " + file.getFileName() + " at " + position);
+                segment.channel.truncate(position);
+            }
+        }
+    }
+
+    /*
+     * Copies the records still needed out of sealed segments that are less than half
+     * live or entirely expired, then deletes them. Records are moved one at a time
+     * under the store's lock, so promotions are never held up for a whole segment.
+     * Tombstones are carried forward while an older segment could still hold the
+     * cart they shadow.
+     */
+    private void compact() {
+        try {
+            List<Segment> candidates = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                for (Segment segment : segments.values()) {
+                    if (segment != active && (segment.liveBytes * 2 < segment.size || isExpired(segment.maxTime, now))) {
+                        candidates.add(segment);
+                    }
+                }
+            }
+            for (Segment segment : candidates) {
+                long position = 0;
+                while (position < segment.size) {
+                    synchronized (this) {
+                        ByteBuffer body = readRecord(segment, position);
+                        if (body == null) {
+                            break;
+                        }
+                        int recordBytes = HEADER_BYTES + body.remaining();
+                        long cartId = body.getLong();
+                        byte type = body.get();
+                        long time = body.getLong();
+                        long now = System.currentTimeMillis();
+                        if (type == CART && index.get(cartId) == location(segment.number, position)) {
+                            if (isExpired(time, now)) {
+                                forget(cartId);
+                                dropped++;
+                            } else {
+                                byte[] payload = new byte[body.remaining()];
+                                body.get(payload);
+                                long location = append(cartId, CART, time, payload);
+                                forget(cartId);
+                                put(cartId, location, recordBytes);
+                            }
+                        } else if (type == REMOVED && segment != segments.firstEntry().getValue() && !isExpired(time, now)) {
+                            append(cartId, REMOVED, time, new byte[0]);
+                        }
+                        position += recordBytes;
+                    }
+                }
+                synchronized (this) {
+                    if (segment.liveBytes > 0) {
+                        // stopped at a bad record: keep what is still referenced
+                        continue;
+                    }
+                    segments.remove(segment.number);
+                    segment.channel.close();
+                    Files.deleteIfExists(segment.path);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Cart spill compaction failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isExpired(long time, long now) {
+        return ttlMillis > 0 && time + ttlMillis <= now;
+    }
+
+    /* The following run under the store's lock. */
+
+    private long append(long cartId, byte type, long time, byte[] payload) throws IOException {
+        if (active.size >= segmentBytes) {
+            active.channel.force(false);
+            openSegment(active.number + 1);
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + BODY_HEADER_BYTES + payload.length);
+        record.position(HEADER_BYTES);
+        record.putLong(cartId).put(type).putLong(time).put(payload);
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), HEADER_BYTES, record.capacity() - HEADER_BYTES);
+        record.putInt(0, record.capacity() - HEADER_BYTES).putInt(4, (int) checksum.getValue());
+        record.rewind();
+        long position = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, position + record.position());
+        }
+        active.size += record.capacity();
+        active.maxTime = Math.max(active.maxTime, time);
+        return location(active.number, position);
+    }
+
+    private void put(long cartId, long location, int recordBytes) {
+        if (index.isFull()) {
+            index = index.resize();
+        }
+        index.put(cartId, location);
+        segments.get(segment(location)).liveBytes += recordBytes;
+    }
+
+    /* Drops the cart from the index and takes its record off its segment's live bytes. */
+    private void forget(long cartId) throws IOException {
+        long location = index.get(cartId);
+        if (location == 0) {
+            return;
+        }
+        index.remove(cartId);
+        Segment segment = segments.get(segment(location));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(segment.channel, header, offset(location));
+        segment.liveBytes -= HEADER_BYTES + header.getInt(0);
+    }
+
+    private ByteBuffer readBody(long location) throws IOException {
+        ByteBuffer body = readRecord(segments.get(segment(location)), offset(location));
+        if (body == null) {
+            throw new IOException("Corrupted cart record at " + segment(location) + ":" + offset(location));
+        }
+        return body;
+    }
+
+    /* Returns the verified body of the record at {@code position}, or null at the end or on a bad record. */
+    private static ByteBuffer readRecord(Segment segment, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (readFully(segment.channel, header, position) < HEADER_BYTES) {
+            return null;
+        }
+        int length = header.getInt(0);
+        int crc = header.getInt(4);
+        if (length < BODY_HEADER_BYTES || length > MAX_RECORD_BYTES) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        if (readFully(segment.channel, body, position + HEADER_BYTES) < length) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(body.array(), 0, length);
+        if ((int) checksum.getValue() != crc) {
+            return null;
+        }
+        body.flip();
+        return body;
+    }
+
+    private void openSegment(int number) throws IOException {
+        Path file = directory.resolve(String.format("%s%010d%s", PREFIX, number, SUFFIX));
+        Segment segment = new Segment(number, file, FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segment.size = segment.channel.size();
+        segments.put(number, segment);
+        active = segment;
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private static int segment(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    private static long offset(long location) {
+        return location & ((1L << OFFSET_BITS) - 1);
+    }
+
+    private static int number(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+        long maxTime;
+
+        Segment(int number, Path path, FileChannel channel) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    /*
+     * Cart id to record location, open addressing with linear probing in a direct
+     * buffer of 16-byte slots (id, location). Location 0 marks an empty slot:
+     * segments are numbered from 1.
+     */
+    private static class LocationTable {
+        private final ByteBuffer slots;
+        private final int mask;
+        int count;
+
+        LocationTable(int capacity) {
+            slots = ByteBuffer.allocateDirect(capacity * 16);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long get(long key) {
+            for (int i = index(key); ; i = (i + 1) & mask) {
+                long location = slots.getLong(i * 16 + 8);
+                if (location == 0 || slots.getLong(i * 16) == key) {
+                    return location;
+                }
+            }
+        }
+
+        void put(long key, long location) {
+            int i = index(key);
+            while (slots.getLong(i * 16 + 8) != 0 && slots.getLong(i * 16) != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots.getLong(i * 16 + 8) == 0) {
+                count++;
+            }
+            slots.putLong(i * 16, key);
+            slots.putLong(i * 16 + 8, location);
+        }
+
+        void remove(long key) {
+            int i = index(key);
+            while (slots.getLong(i * 16 + 8) != 0 && slots.getLong(i * 16) != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots.getLong(i * 16 + 8) == 0) {
+                return;
+            }
+            count--;
+            int hole = i;
+            for (int j = (hole + 1) & mask; slots.getLong(j * 16 + 8) != 0; j = (j + 1) & mask) {
+                int home = index(slots.getLong(j * 16));
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    slots.putLong(hole * 16, slots.getLong(j * 16));
+                    slots.putLong(hole * 16 + 8, slots.getLong(j * 16 + 8));
+                    hole = j;
+                }
+            }
+            slots.putLong(hole * 16 + 8, 0);
+        }
+
+        boolean isFull() {
+            return count + 1 > capacity() / 2;
+        }
+
+        LocationTable resize() {
+            LocationTable grown = new LocationTable(capacity() * 2);
+            for (int i = 0; i <= mask; i++) {
+                long location = slots.getLong(i * 16 + 8);
+                if (location != 0) {
+                    grown.put(slots.getLong(i * 16), location);
+                }
+            }
+            return grown;
+        }
+
+        private int index(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.repository.ProductRepository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Carts that have not been checked out, bounded three ways:
+ *
+ * - idle TTL: a cart whose updatedAt is older than -Decommerce.carts.ttlSeconds
+ *   (default one hour, 0 to disable) leaves memory. Carts are kept in write order,
+ *   so the sweeper only ever looks at the ones due and costs nothing when none is.
+ * - entry count: at most -Decommerce.carts.maxEntries carts.
+ * - heap: at most -Decommerce.carts.maxMegabytes of estimated cart size, weighed
+ *   by number of lines (products are shared with the catalogue and not counted).
+ *
+ * Over a limit, W-TinyLFU picks what goes: new carts start in a small LRU window,
+ * and a cart leaving the window only displaces the coldest cart of the main
+ * segmented LRU if the frequency sketch has seen it more often. A burst of
+ * one-shot carts from bots therefore evicts itself rather than the carts of
+ * returning shoppers.
+ *
+ * Lookups go straight to a ConcurrentHashMap; the policy lists are updated under
+ * a lock that a lookup only takes if it is free, so a busy store skips reordering
+ * instead of queueing on it.
+ *
+ * Changes to a cart are made under its lock (lockFor), and so is its way out: a
+ * cart leaving memory is parked in the policy lock, then written to disk and
+ * handed to the listener (OrderService releases its stock holds) under its own
+ * lock, after any change in progress. A lookup in the meantime takes it back.
+ *
+ * Without -Decommerce.carts.spillDir a cart leaving memory is gone. With it, the
+ * cart is written to a CartSpillStore there (kept -Decommerce.carts.spillTtlDays,
+ * default 30) and the next get() for it brings it back into memory, so shoppers
+ * returning days later find their cart while the heap only holds active ones.
+ * The disk is only read and written outside the policy lock.
+ */
+public class CartStore {
+
+    private static final int CART_BYTES = 320;
+    private static final int LINE_BYTES = 96;
+    private static final long SWEEP_MILLIS = 1000;
+    private static final int LOCK_STRIPES = 256;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int windowMaxEntries;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+    private final Consumer<Cart> evictionListener;
+    private final CartSpillStore spill;
+
+    private final Map<Long, Node> data = new ConcurrentHashMap<>();
+    // out of the policy, not yet spilled or released; pending ones wait for a busy cart lock
+    private final Map<Long, Cart> leaving = new ConcurrentHashMap<>();
+    private final Queue<Cart> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock[] cartLocks = new ReentrantLock[LOCK_STRIPES];
+    private final FrequencySketch sketch;
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final Node[] heads = new Node[3];
+    private final Node[] tails = new Node[3];
+    private final long[] queueBytes = new long[3];
+    private final int[] queueSizes = new int[3];
+    private Node oldestWrite;
+    private Node newestWrite;
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long expired;
+    private long evicted;
+    private long promoted;
+    private final AtomicLong spilled = new AtomicLong();
+
+    public CartStore(Consumer<Cart> evictionListener) {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong("ecommerce.carts.ttlSeconds", 3600)),
+             Integer.getInteger("ecommerce.carts.maxEntries", 100_000),
+             Long.getLong("ecommerce.carts.maxMegabytes", 64) << 20,
+             openSpill(System.getProperty("ecommerce.carts.spillDir")),
+             evictionListener);
+    }
+
+    public CartStore(long ttlMillis, int maxEntries, long maxBytes, Consumer<Cart> evictionListener) {
+        this(ttlMillis, maxEntries, maxBytes, null, evictionListener);
+    }
+
+    CartStore(long ttlMillis, int maxEntries, long maxBytes, CartSpillStore spill, Consumer<Cart> evictionListener) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cart store limits must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.windowMaxEntries = Math.max(1, maxEntries / 100);
+        this.windowMaxBytes = Math.max(CART_BYTES, maxBytes / 100);
+        this.protectedMaxBytes = (maxBytes - windowMaxBytes) * 4 / 5;
+        this.evictionListener = evictionListener;
+        this.spill = spill;
+        this.sketch = new FrequencySketch(maxEntries);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            cartLocks[i] = new ReentrantLock();
+        }
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lock serializing the changes to a cart, striped by id. Different carts go in
+     * parallel; readers do not lock (see Cart).
+     */
+    public ReentrantLock lockFor(Long cartId) {
+        int h = cartId == null ? 0 : cartId.hashCode();
+        h ^= (h >>> 16);
+        return cartLocks[h & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Returns the cart, bringing it back from the disk tier if it was spilled. A
+     * cart found in memory is returned without waiting; one that has to be brought
+     * back takes its cart lock.
+     */
+    public Cart get(Long cartId) {
+        Node node = cartId == null ? null : data.get(cartId);
+        if (node != null && isExpired(node, System.currentTimeMillis())) {
+            if (spill == null) {
+                // due to leave memory, with nowhere to come back from
+                misses.incrementAndGet();
+                return null;
+            }
+            if (!revive(node)) {
+                node = null;
+            }
+        }
+        if (node == null) {
+            Cart cart = cartId == null ? null : promote(cartId);
+            (cart == null ? misses : hits).incrementAndGet();
+            return cart;
+        }
+        hits.incrementAndGet();
+        // lossy on purpose: when the lock is busy the reordering is skipped
+        if (policyLock.tryLock()) {
+            try {
+                if (data.get(cartId) == node) {
+                    onAccess(node);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node.cart;
+    }
+
+    public void put(Long cartId, Cart cart) {
+        List<Cart> victims = new ArrayList<>();
+        policyLock.lock();
+        try {
+            Node old = data.remove(cartId);
+            if (old != null) {
+                unlink(old);
+            }
+            insert(cartId, cart, writeTime(cart));
+            evict(victims);
+        } finally {
+            policyLock.unlock();
+        }
+        release(victims, false);
+    }
+
+    /**
+     * Called after a cart was changed: weighs it again and restarts its idle TTL
+     * from its updatedAt. May evict, the cart itself included if it alone goes over
+     * the heap limit.
+     */
+    public void touch(Cart cart) {
+        List<Cart> victims = new ArrayList<>();
+        policyLock.lock();
+        try {
+            Node node = data.get(cart.id);
+            if (node == null || node.cart != cart) {
+                return;
+            }
+            int bytes = weigh(cart);
+            queueBytes[node.queue] += bytes - node.bytes;
+            totalBytes += bytes - node.bytes;
+            node.bytes = bytes;
+            node.writeMillis = writeTime(cart);
+            unlinkWrite(node);
+            appendWrite(node);
+            onAccess(node);
+            evict(victims);
+        } finally {
+            policyLock.unlock();
+        }
+        release(victims, false);
+    }
+
+    /**
+     * Removes the cart, from disk too, without notifying the listener (checkout).
+     * Called under the cart's lock.
+     */
+    public Cart remove(Long cartId) {
+        policyLock.lock();
+        try {
+            Node node = data.remove(cartId);
+            if (node != null) {
+                unlink(node);
+                return node.cart;
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        Cart cart = leaving.remove(cartId);
+        if (cart == null && spill != null) {
+            try {
+                spill.remove(cartId);
+            } catch (IOException e) {
+                System.out.println("Cannot remove spilled cart " + cartId + ": " + e.getMessage());
+            }
+        }
+        return cart;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Highest cart id in memory or on disk, so that new carts do not reuse the id of
+     * a live one after a restart or a counter reset.
+     */
+    public long maxCartId() {
+        long max = spill == null ? 0 : spill.maxCartId();
+        for (Long cartId : data.keySet()) {
+            max = Math.max(max, cartId);
+        }
+        for (Long cartId : leaving.keySet()) {
+            max = Math.max(max, cartId);
+        }
+        return max;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        policyLock.lock();
+        try {
+            stats.put("liveCarts", data.size());
+            stats.put("estimatedBytes", totalBytes);
+            stats.put("maxEntries", maxEntries);
+            stats.put("maxBytes", maxBytes);
+            stats.put("ttlSeconds", TimeUnit.MILLISECONDS.toSeconds(ttlMillis));
+            stats.put("windowCarts", queueSizes[WINDOW]);
+            stats.put("probationCarts", queueSizes[PROBATION]);
+            stats.put("protectedCarts", queueSizes[PROTECTED]);
+            stats.put("expired", expired);
+            stats.put("evicted", evicted);
+            stats.put("spilled", spilled.get());
+            stats.put("promoted", promoted);
+        } finally {
+            policyLock.unlock();
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        if (spill != null) {
+            stats.putAll(spill.stats());
+        }
+        return stats;
+    }
+
+    /*
+     * Drops the carts whose idle TTL ran out, oldest write first, and finishes the
+     * evictions that found their cart lock busy.
+     */
+    void sweep() {
+        try {
+            List<Cart> victims = new ArrayList<>();
+            for (Cart cart = pending.poll(); cart != null; cart = pending.poll()) {
+                victims.add(cart);
+            }
+            long now = System.currentTimeMillis();
+            policyLock.lock();
+            try {
+                while (ttlMillis > 0 && oldestWrite != null && oldestWrite.writeMillis + ttlMillis <= now) {
+                    Node node = oldestWrite;
+                    long updated = writeTime(node.cart);
+                    if (updated > node.writeMillis && updated + ttlMillis > now) {
+                        // changed without a touch(): move it to its place in the write order
+                        node.writeMillis = updated;
+                        unlinkWrite(node);
+                        appendWrite(node);
+                        continue;
+                    }
+                    data.remove(node.key);
+                    unlink(node);
+                    expired++;
+                    discard(node, victims);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+            // the sweeper holds no cart lock, so it can wait for them
+            release(victims, true);
+        } catch (RuntimeException e) {
+            System.out.println("Cart expiry failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isExpired(Node node, long now) {
+        return ttlMillis > 0 && node.writeMillis + ttlMillis <= now && writeTime(node.cart) + ttlMillis <= now;
+    }
+
+    /* Restarts the TTL of a cart that is due to leave memory but was asked for; false if it already left. */
+    private boolean revive(Node node) {
+        policyLock.lock();
+        try {
+            if (data.get(node.key) != node) {
+                return false;
+            }
+            node.writeMillis = System.currentTimeMillis();
+            unlinkWrite(node);
+            appendWrite(node);
+            return true;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /*
+     * Brings a cart back into memory: one still leaving is taken back as it is,
+     * otherwise it is read from disk. The cart lock keeps a concurrent promotion or
+     * release of the same cart out; the disk is read before taking the policy lock.
+     */
+    private Cart promote(Long cartId) {
+        List<Cart> victims = new ArrayList<>();
+        Cart cart;
+        ReentrantLock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            Node node = data.get(cartId);
+            if (node != null) {
+                return node.cart;
+            }
+            cart = leaving.remove(cartId);
+            if (cart == null && spill != null) {
+                try {
+                    cart = spill.take(cartId);
+                } catch (IOException e) {
+                    System.out.println("Cannot read spilled cart " + cartId + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            if (cart == null) {
+                return null;
+            }
+            policyLock.lock();
+            try {
+                // its updatedAt may be old: the TTL restarts from the promotion
+                insert(cartId, cart, System.currentTimeMillis());
+                promoted++;
+                evict(victims);
+            } finally {
+                policyLock.unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+        release(victims, false);
+        return cart;
+    }
+
+    /* The following run under the policy lock. */
+
+    private void insert(Long cartId, Cart cart, long writeMillis) {
+        Node node = new Node(cartId, cart);
+        node.bytes = weigh(cart);
+        node.writeMillis = writeMillis;
+        data.put(cartId, node);
+        totalBytes += node.bytes;
+        append(WINDOW, node);
+        appendWrite(node);
+        sketch.increment(cartId);
+    }
+
+    /* The node was just removed from memory: its cart is parked until release() runs. */
+    private void discard(Node node, List<Cart> victims) {
+        leaving.put(node.key, node.cart);
+        victims.add(node.cart);
+    }
+
+    private void onAccess(Node node) {
+        sketch.increment(node.key);
+        if (node.queue == PROBATION) {
+            unlinkQueue(node);
+            append(PROTECTED, node);
+            while (queueBytes[PROTECTED] > protectedMaxBytes && heads[PROTECTED] != node) {
+                Node demoted = heads[PROTECTED];
+                unlinkQueue(demoted);
+                append(PROBATION, demoted);
+            }
+        } else {
+            unlinkQueue(node);
+            append(node.queue, node);
+        }
+    }
+
+    /*
+     * Carts pushed out of the window become admission candidates at the tail of
+     * probation. While over a limit, the coldest cart of the main segment (the
+     * victim) is compared with the newest candidate and whichever the sketch has
+     * seen less often is evicted.
+     */
+    private void evict(List<Cart> victims) {
+        while (heads[WINDOW] != null
+                && (queueBytes[WINDOW] > windowMaxBytes || queueSizes[WINDOW] > windowMaxEntries)) {
+            Node node = heads[WINDOW];
+            unlinkQueue(node);
+            append(PROBATION, node);
+            node.candidate = true;
+        }
+        while (data.size() > maxEntries || totalBytes > maxBytes) {
+            Node victim = heads[PROBATION] != null ? heads[PROBATION]
+                    : heads[PROTECTED] != null ? heads[PROTECTED] : heads[WINDOW];
+            if (victim == null) {
+                break;
+            }
+            Node candidate = tails[PROBATION];
+            Node evictee = victim;
+            if (candidate != null && candidate.candidate && candidate != victim
+                    && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                evictee = candidate;
+            }
+            data.remove(evictee.key);
+            unlink(evictee);
+            evicted++;
+            discard(evictee, victims);
+        }
+    }
+
+    private void append(int queue, Node node) {
+        node.queue = queue;
+        node.candidate = false;
+        node.prev = tails[queue];
+        node.next = null;
+        if (tails[queue] != null) {
+            tails[queue].next = node;
+        } else {
+            heads[queue] = node;
+        }
+        tails[queue] = node;
+        queueBytes[queue] += node.bytes;
+        queueSizes[queue]++;
+    }
+
+    private void unlinkQueue(Node node) {
+        int queue = node.queue;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            heads[queue] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tails[queue] = node.prev;
+        }
+        node.prev = node.next = null;
+        queueBytes[queue] -= node.bytes;
+        queueSizes[queue]--;
+    }
+
+    private void appendWrite(Node node) {
+        node.prevWrite = newestWrite;
+        node.nextWrite = null;
+        if (newestWrite != null) {
+            newestWrite.nextWrite = node;
+        } else {
+            oldestWrite = node;
+        }
+        newestWrite = node;
+    }
+
+    private void unlinkWrite(Node node) {
+        if (node.prevWrite != null) {
+            node.prevWrite.nextWrite = node.nextWrite;
+        } else {
+            oldestWrite = node.nextWrite;
+        }
+        if (node.nextWrite != null) {
+            node.nextWrite.prevWrite = node.prevWrite;
+        } else {
+            newestWrite = node.prevWrite;
+        }
+        node.prevWrite = node.nextWrite = null;
+    }
+
+    private void unlink(Node node) {
+        unlinkQueue(node);
+        unlinkWrite(node);
+        totalBytes -= node.bytes;
+    }
+
+    /*
+     * Spills the carts that left memory and hands them to the listener, each under
+     * its cart lock so that a change in progress lands before it. Called without the
+     * policy lock. A caller may already hold another cart's lock, so unless
+     * {@code wait} is set a busy lock defers the cart to the sweeper instead.
+     */
+    private void release(List<Cart> victims, boolean wait) {
+        for (Cart cart : victims) {
+            ReentrantLock lock = lockFor(cart.id);
+            if (wait) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                pending.add(cart);
+                continue;
+            }
+            try {
+                // false when it was brought back or checked out meanwhile
+                if (leaving.remove(cart.id, cart)) {
+                    spill(cart);
+                    evictionListener.accept(cart);
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Cart eviction listener failed for cart " + cart.id + ": " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void spill(Cart cart) {
+        if (spill == null) {
+            return;
+        }
+        try {
+            spill.write(cart);
+            spilled.incrementAndGet();
+        } catch (IOException e) {
+            System.out.println("Cannot spill cart " + cart.id + ", dropping it: " + e.getMessage());
+        }
+    }
+
+    private static CartSpillStore openSpill(String spillDir) {
+        if (spillDir == null) {
+            return null;
+        }
+        long segmentBytes = Long.getLong("ecommerce.carts.spillSegmentBytes", 64L << 20);
+        long ttlMillis = TimeUnit.DAYS.toMillis(Long.getLong("ecommerce.carts.spillTtlDays", 30));
+        try {
+            return new CartSpillStore(Paths.get(spillDir), segmentBytes, ttlMillis, ProductRepository.getInstance()::findById);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open cart spill store in " + spillDir, e);
+        }
+    }
+
+    private static int weigh(Cart cart) {
+        return CART_BYTES + LINE_BYTES * cart.getItems().size();
+    }
+
+    private static long writeTime(Cart cart) {
+        Date updated = cart.updatedAt != null ? cart.updatedAt : cart.createdAt;
+        return updated != null ? updated.getTime() : 0;
+    }
+
+    private static final class Node {
+        final Long key;
+        final Cart cart;
+        int bytes;
+        int queue;
+        boolean candidate;
+        long writeMillis;
+        Node prev;
+        Node next;
+        Node prevWrite;
+        Node nextWrite;
+
+        Node(Long key, Cart cart) {
+            this.key = key;
+            this.cart = cart;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch cart edit. Either every operation was applied or none was;
+ * items give the status of each operation in request order, and the cart and
+ * totals are its state after the edit (unchanged when it was rejected).
+ */
+public class CartUpdateResult {
+
+    public static final String APPLIED = "APPLIED";
+    public static final String CART_NOT_FOUND = "CART_NOT_FOUND";
+    public static final String INVALID = "INVALID";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String INSUFFICIENT_STOCK = "INSUFFICIENT_STOCK";
+    public static final String REJECTED = "REJECTED";
+
+    public boolean applied;
+    public String status;
+    public Cart cart;
+    public int totalItems;
+    public double total;
+    public double discountedTotal;
+    public List<Item> items = new ArrayList<>();
+
+    public static class Item {
+        public String type;
+        public Long productId;
+        public String status;
+
+        Item(String type, Long productId, String status) {
+            this.type = type;
+            this.productId = productId;
+            this.status = status;
+        }
+    }
+}
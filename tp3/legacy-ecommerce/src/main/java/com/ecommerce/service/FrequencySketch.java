@@ -0,0 +1,78 @@
+package com.ecommerce.service;
+
+/**
+ * Approximate access counts for TinyLFU admission: a count-min sketch of 4-bit
+ * counters, sixteen to a long, each key hashed to four of them. Once the number
+ * of increments reaches ten times the capacity every counter is halved, so the
+ * counts follow recent popularity instead of all-time totals. Not thread safe;
+ * the owner calls it under its own lock.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0x97CB3127L, 0xB6A8C9F3L, 0x3C6EF372L, 0x9E3779B9L
+    };
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, Math.min(capacity, 1 << 24)) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(capacity, 64));
+    }
+
+    /** Estimated number of recent accesses to the key, 0 to 15. */
+    int frequency(long key) {
+        long hash = spread(key);
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash * SEEDS[i];
+            int shift = counterShift(h);
+            frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift) & 15));
+        }
+        return frequency;
+    }
+
+    void increment(long key) {
+        long hash = spread(key);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash * SEEDS[i];
+            int index = index(h);
+            int shift = counterShift(h);
+            if (((table[index] >>> shift) & 15) != 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(long h) {
+        return (int) (h >>> 32) & tableMask;
+    }
+
+    private static int counterShift(long h) {
+        return ((int) (h >>> 24) & 15) << 2;
+    }
+
+    private static long spread(long key) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+}
@@ -0,0 +1,308 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.repository.ProductRepository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock reservation for checkout. A cart is reserved as a whole: either every
+ * line gets its units or none does (see ProductRepository.reserveStock).
+ *
+ * With -Decommerce.holds.ttlSeconds set, adding to a cart also holds the units for
+ * that long (refreshed by every add of the same product), so a flash sale fails at
+ * add-to-cart rather than at checkout. Expiry is driven by one timing wheel ticking
+ * every HOLD_TICK_MILLIS instead of a scheduled task per hold.
+ *
+ * A cart's holds are a map guarded by its own monitor. Maps are registered and
+ * unregistered inside holdsByCart.compute, which takes the monitor within; no
+ * code touches holdsByCart while holding a monitor, so the two cannot deadlock.
+ * Stock is taken and given back outside compute, which only records the result,
+ * so no repository lock is ever waited for while a bin of holdsByCart is locked.
+ */
+public class InventoryService {
+
+    private static final long HOLD_TICK_MILLIS = 100;
+
+    private static volatile InventoryService instance;
+
+    private final ProductRepository productRepository = ProductRepository.getInstance();
+    private final long holdTtlMillis = TimeUnit.SECONDS.toMillis(Long.getLong("ecommerce.holds.ttlSeconds", 0));
+    private final Map<Long, Map<Long, Hold>> holdsByCart = new ConcurrentHashMap<>();
+    private TimingWheel<Hold> holdExpiry;
+
+    private InventoryService() {
+        if (holdTtlMillis > 0) {
+            holdExpiry = new TimingWheel<>(HOLD_TICK_MILLIS, System.currentTimeMillis());
+            if (holdTtlMillis > holdExpiry.maxDelayMillis()) {
+                throw new IllegalArgumentException("ecommerce.holds.ttlSeconds is too large");
+            }
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "stock-hold-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::expireHolds, HOLD_TICK_MILLIS, HOLD_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static InventoryService getInstance() {
+        if (instance == null) {
+            synchronized (InventoryService.class) {
+                if (instance == null) {
+                    instance = new InventoryService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean holdsEnabled() {
+        return holdTtlMillis > 0;
+    }
+
+    /**
+     * Holds {@code quantity} more units of the product for the cart and restarts the
+     * hold's TTL. Returns false when they are not available; always true when holds
+     * are disabled.
+     */
+    public boolean hold(Long cartId, Long productId, int quantity) {
+        if (!holdsEnabled()) {
+            return true;
+        }
+        Map<Long, Integer> line = Collections.singletonMap(productId, quantity);
+        Map<Long, Hold> before = holdsByCart.get(cartId);
+        if (!productRepository.holdStock(line).isEmpty()) {
+            return false;
+        }
+        // a false record means the cart's holds were released meanwhile, this one included
+        if (!record(cartId, before, line, Collections.emptyMap(), new HashMap<>())) {
+            productRepository.releaseHeld(line);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the cart's holds by {@code deltas} (units per product, negative to give
+     * back) in one go: the increases are held all or nothing, and only then are the
+     * decreases released. Returns the ids that could not be held, in which case no
+     * hold changed; always empty when holds are disabled.
+     */
+    public List<Long> adjustHolds(Long cartId, Map<Long, Integer> deltas) {
+        if (!holdsEnabled()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Integer> increases = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+            if (delta.getValue() > 0) {
+                increases.put(delta.getKey(), delta.getValue());
+            }
+        }
+        Map<Long, Hold> before = holdsByCart.get(cartId);
+        if (!increases.isEmpty()) {
+            List<Long> insufficient = productRepository.holdStock(increases);
+            if (!insufficient.isEmpty()) {
+                return insufficient;
+            }
+        }
+        Map<Long, Integer> released = new HashMap<>();
+        if (!record(cartId, before, increases, deltas, released)) {
+            productRepository.releaseHeld(increases);
+        }
+        productRepository.releaseHeld(released);
+        return Collections.emptyList();
+    }
+
+    /*
+     * Records increases already taken from the stock into the cart's holds and takes
+     * the decreases off them, adding the units to give back to {@code released}.
+     * {@code before} is the cart's map as seen before the stock was taken: when it
+     * has been unregistered since, the cart's holds were released or sold meanwhile,
+     * which would have included these units, so nothing is recorded and false tells
+     * the caller to give the increases back.
+     */
+    private boolean record(Long cartId, Map<Long, Hold> before, Map<Long, Integer> increases,
+                           Map<Long, Integer> deltas, Map<Long, Integer> released) {
+        boolean[] recorded = new boolean[1];
+        holdsByCart.compute(cartId, (id, current) -> {
+            if (before != null && current != before) {
+                return current;
+            }
+            Map<Long, Hold> holds = current != null ? current : new HashMap<>();
+            synchronized (holds) {
+                applyDeltas(holds, cartId, deltas, increases, released);
+                recorded[0] = true;
+                return holds.isEmpty() ? null : holds;
+            }
+        });
+        return recorded[0];
+    }
+
+    /* Takes the decreases off the holds and records the increases. Caller holds the map's lock. */
+    private void applyDeltas(Map<Long, Hold> holds, Long cartId, Map<Long, Integer> deltas,
+                             Map<Long, Integer> increases, Map<Long, Integer> released) {
+        for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+            Hold hold = holds.get(delta.getKey());
+            if (delta.getValue() >= 0 || hold == null) {
+                continue;
+            }
+            int units = Math.min(hold.units, -delta.getValue());
+            hold.units -= units;
+            released.put(hold.productId, units);
+            if (hold.units == 0) {
+                holds.remove(hold.productId);
+                holdExpiry.cancel(hold.timeout);
+            }
+        }
+        for (Map.Entry<Long, Integer> increase : increases.entrySet()) {
+            addHold(holds, cartId, increase.getKey(), increase.getValue());
+        }
+    }
+
+    /** Gives the cart's units of the product back to the stock. */
+    public void release(Long cartId, Long productId) {
+        Map<Long, Hold> holds = holdsByCart.get(cartId);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            Hold hold = holds.remove(productId);
+            if (hold != null) {
+                holdExpiry.cancel(hold.timeout);
+                productRepository.releaseHeld(Collections.singletonMap(productId, hold.units));
+            }
+        }
+    }
+
+    /** Gives all of the cart's held units back to the stock. */
+    public void releaseAll(Long cartId) {
+        Map<Long, Hold> holds = holdsByCart.remove(cartId);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            productRepository.releaseHeld(drain(holds));
+        }
+    }
+
+    public int activeHolds() {
+        return holdExpiry == null ? 0 : holdExpiry.size();
+    }
+
+    /**
+     * Reserves the units of every line of the cart; a product appearing on several
+     * lines is reserved for their sum. Units the cart holds are used first and any
+     * it held beyond what it buys go back to the stock. Returns the ids that could
+     * not be served, empty when the whole cart was reserved (its holds are then
+     * gone).
+     */
+    public List<Long> reserve(Cart cart) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (Cart.CartItem item : cart.getItems()) {
+            if (item.product != null) {
+                quantities.merge(item.product.id, item.quantity, Integer::sum);
+            }
+        }
+        Map<Long, Hold> holds = holdsByCart.get(cart.id);
+        if (holds == null) {
+            return reserve(quantities);
+        }
+        List<Long> insufficient;
+        synchronized (holds) {
+            Map<Long, Integer> held = new HashMap<>();
+            for (Hold hold : holds.values()) {
+                held.put(hold.productId, hold.units);
+            }
+            insufficient = productRepository.reserveStock(quantities, held);
+            if (insufficient.isEmpty()) {
+                Map<Long, Integer> surplus = drain(holds);
+                for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                    surplus.computeIfPresent(line.getKey(), (id, units) -> units > line.getValue() ? units - line.getValue() : null);
+                }
+                productRepository.releaseHeld(surplus);
+            }
+        }
+        if (insufficient.isEmpty()) {
+            dropIfEmpty(cart.id);
+        }
+        return insufficient;
+    }
+
+    public List<Long> reserve(Map<Long, Integer> quantities) {
+        return productRepository.reserveStock(quantities);
+    }
+
+    /* Adds units to the cart's hold of the product and restarts its TTL. Caller holds the map's lock. */
+    private void addHold(Map<Long, Hold> holds, Long cartId, Long productId, int units) {
+        Hold hold = holds.get(productId);
+        if (hold == null) {
+            hold = new Hold(cartId, productId);
+            holds.put(productId, hold);
+        } else {
+            holdExpiry.cancel(hold.timeout);
+        }
+        hold.units += units;
+        hold.timeout = holdExpiry.schedule(hold, holdTtlMillis, System.currentTimeMillis());
+    }
+
+    /* Unregisters the cart's map once it is empty. Called without holding any map's lock. */
+    private void dropIfEmpty(Long cartId) {
+        holdsByCart.computeIfPresent(cartId, (id, holds) -> {
+            synchronized (holds) {
+                return holds.isEmpty() ? null : holds;
+            }
+        });
+    }
+
+    /* Cancels the timeouts and empties the map; returns the units per product. Caller holds the map's lock. */
+    private Map<Long, Integer> drain(Map<Long, Hold> holds) {
+        Map<Long, Integer> units = new HashMap<>();
+        for (Hold hold : holds.values()) {
+            holdExpiry.cancel(hold.timeout);
+            units.put(hold.productId, hold.units);
+        }
+        holds.clear();
+        return units;
+    }
+
+    private void expireHolds() {
+        try {
+            for (Hold hold : holdExpiry.advance(System.currentTimeMillis())) {
+                Map<Long, Hold> holds = holdsByCart.get(hold.cartId);
+                if (holds == null) {
+                    continue;
+                }
+                synchronized (holds) {
+                    // skip a hold that was refreshed, released or sold in the meantime
+                    if (holds.get(hold.productId) == hold && !holdExpiry.isPending(hold.timeout)) {
+                        holds.remove(hold.productId);
+                        productRepository.releaseHeld(Collections.singletonMap(hold.productId, hold.units));
+                    }
+                }
+                dropIfEmpty(hold.cartId);
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Stock hold expiry failed: " + e.getMessage());
+        }
+    }
+
+    private static class Hold {
+        final Long cartId;
+        final Long productId;
+        int units;
+        TimingWheel.Timeout<Hold> timeout;
+
+        Hold(Long cartId, Long productId) {
+            this.cartId = cartId;
+            this.productId = productId;
+        }
+    }
+}
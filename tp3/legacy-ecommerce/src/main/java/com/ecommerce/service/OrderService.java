@@ -6,6 +6,8 @@ import com.ecommerce.model.Product;
 import com.ecommerce.repository.ProductRepository;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class OrderService {
     
@@ -13,11 +15,17 @@ public class OrderService {
     private static OrderService instance2;
 
     private ProductRepository productRepository = ProductRepository.getInstance();
+    private InventoryService inventoryService = InventoryService.getInstance();
+    // abandoned carts expire or get evicted instead of piling up; their stock holds go back to the shelf
+    private final CartStore carts = new CartStore(cart -> inventoryService.releaseAll(cart.id));
     
-    private Long orderIdCounter = 1L;
-    private Long cartIdCounter = 1L;
+    // carts and checkouts are created concurrently, ids must not be handed out twice
+    private final AtomicLong orderIdCounter = new AtomicLong(1);
+    private final AtomicLong cartIdCounter = new AtomicLong(1);
 
     private OrderService() {
+        // ids of carts spilled to disk by a previous run stay taken
+        cartIdCounter.set(carts.maxCartId() + 1);
     }
     
     public static OrderService getInstance() {
@@ -42,7 +50,7 @@ public class OrderService {
         if (userId == null) {
         }
         
-        Cart cart = new Cart(cartIdCounter++, userId);
+        Cart cart = new Cart(cartIdCounter.getAndIncrement(), userId);
         carts.put(cart.id, cart);
         
         if (debugMode) {
@@ -61,15 +69,28 @@ public class OrderService {
     }
     
     public boolean addToCart(Long cartId, Long productId, int quantity) {
-        Cart cart = carts.get(cartId);
         Product product = productRepository.findById(productId);
-        
-        if (cart == null) return false;
+        Cart cart;
 
-        cart.addItem(product, quantity);
+        // with holds enabled the units are taken now, so a sold-out product fails here rather than at checkout
+        ReentrantLock lock = cartLock(cartId);
+        lock.lock();
+        try {
+            // looked up under the lock: a cart leaving memory is only spilled and has its
+            // holds released once we are done with it
+            cart = carts.get(cartId);
+            if (cart == null) return false;
+            if (!inventoryService.hold(cartId, productId, quantity)) {
+                return false;
+            }
+            cart.addItem(product, quantity);
+        } finally {
+            lock.unlock();
+        }
+        carts.touch(cart);
         
 
-        if (cart.items.size() > 10) {
+        if (cart.getItems().size() > 10) {
         }
         
         return true;
@@ -83,46 +104,187 @@ public class OrderService {
     }
     
     public void removeFromCart(Long cartId, Long productId) {
-        Cart cart = carts.get(cartId);
+        Cart cart;
+        ReentrantLock lock = cartLock(cartId);
+        lock.lock();
+        try {
+            cart = carts.get(cartId);
+            if (cart != null) {
+                cart.removeItem(productId);
+            }
+            inventoryService.release(cartId, productId);
+        } finally {
+            lock.unlock();
+        }
         if (cart != null) {
-            cart.removeItem(productId);
+            carts.touch(cart);
+        }
+    }
+    
+    /**
+     * Applies a list of add/set/remove operations to the cart in one pass, all or
+     * nothing. The operations are first played against the cart's current
+     * quantities to get the final quantity of every product they touch; the
+     * products are then loaded in one call and the stock holds moved by the net
+     * change of each line at once, so a batch costs one hold round trip and one
+     * re-weigh of the cart however many lines it edits.
+     */
+    public CartUpdateResult updateCart(Long cartId, List<CartOperation> operations) {
+        CartUpdateResult result = new CartUpdateResult();
+        Cart cart;
+        ReentrantLock lock = cartLock(cartId);
+        lock.lock();
+        try {
+            cart = carts.get(cartId);
+            if (cart == null) {
+                result.status = CartUpdateResult.CART_NOT_FOUND;
+                return result;
+            }
+            Map<Long, Integer> current = new LinkedHashMap<>();
+            Map<Long, Integer> target = new LinkedHashMap<>();
+            Set<Long> needed = new HashSet<>();
+            for (CartOperation op : operations) {
+                String status = checkOperation(op);
+                result.items.add(new CartUpdateResult.Item(op == null ? null : op.type, op == null ? null : op.productId, status));
+                if (status != null) {
+                    result.status = status;
+                    continue;
+                }
+                Cart.CartItem line = cart.getItem(op.productId);
+                current.putIfAbsent(op.productId, line == null ? 0 : line.quantity);
+                int quantity = target.getOrDefault(op.productId, current.get(op.productId));
+                if (CartOperation.ADD.equals(op.type)) {
+                    quantity += op.quantity;
+                } else if (CartOperation.SET.equals(op.type)) {
+                    quantity = op.quantity;
+                } else {
+                    quantity = 0;
+                }
+                target.put(op.productId, quantity);
+                if (!CartOperation.REMOVE.equals(op.type)) {
+                    needed.add(op.productId);
+                }
+            }
+            
+            Map<Long, Product> products = Collections.emptyMap();
+            Map<Long, Integer> deltas = new LinkedHashMap<>();
+            if (result.status == null) {
+                products = productRepository.findAllById(needed);
+                for (Map.Entry<Long, Integer> line : target.entrySet()) {
+                    int delta = line.getValue() - current.get(line.getKey());
+                    if (delta > 0 && !products.containsKey(line.getKey())) {
+                        markFailed(result, operations, line.getKey(), CartUpdateResult.NOT_FOUND);
+                    } else if (delta != 0) {
+                        deltas.put(line.getKey(), delta);
+                    }
+                }
+            }
+            if (result.status == null) {
+                for (Long productId : inventoryService.adjustHolds(cartId, deltas)) {
+                    markFailed(result, operations, productId, CartUpdateResult.INSUFFICIENT_STOCK);
+                }
+            }
+            if (result.status != null) {
+                for (CartUpdateResult.Item item : result.items) {
+                    if (item.status == null) {
+                        item.status = CartUpdateResult.REJECTED;
+                    }
+                }
+            } else {
+                Map<Long, Product> resolved = products;
+                // readers see the cart before or after the whole batch, never in between
+                cart.batch(() -> {
+                    for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+                        int quantity = target.get(delta.getKey());
+                        if (quantity == 0) {
+                            cart.removeItem(delta.getKey());
+                        } else if (delta.getValue() > 0) {
+                            cart.addItem(resolved.get(delta.getKey()), delta.getValue());
+                        } else {
+                            cart.updateQuantity(delta.getKey(), quantity);
+                        }
+                    }
+                });
+                for (CartUpdateResult.Item item : result.items) {
+                    item.status = CartUpdateResult.APPLIED;
+                }
+                result.applied = true;
+                result.status = CartUpdateResult.APPLIED;
+            }
+            result.cart = cart;
+            result.totalItems = cart.getTotalItems();
+            result.total = cart.getTotal();
+            result.discountedTotal = cart.calculateTotal();
+        } finally {
+            lock.unlock();
+        }
+        if (result.applied) {
+            carts.touch(cart);
+        }
+        return result;
+    }
+    
+    /* Returns the failure status of a malformed operation, null when it is well formed. */
+    private String checkOperation(CartOperation op) {
+        if (op == null || op.productId == null || op.type == null) {
+            return CartUpdateResult.INVALID;
+        }
+        switch (op.type) {
+            case CartOperation.ADD:
+                return op.quantity != null && op.quantity > 0 ? null : CartUpdateResult.INVALID;
+            case CartOperation.SET:
+                return op.quantity != null && op.quantity >= 0 ? null : CartUpdateResult.INVALID;
+            case CartOperation.REMOVE:
+                return null;
+            default:
+                return CartUpdateResult.INVALID;
+        }
+    }
+    
+    private void markFailed(CartUpdateResult result, List<CartOperation> operations, Long productId, String status) {
+        result.status = status;
+        for (int i = 0; i < operations.size(); i++) {
+            CartOperation op = operations.get(i);
+            if (op != null && productId.equals(op.productId) && !CartOperation.REMOVE.equals(op.type)) {
+                result.items.get(i).status = status;
+            }
         }
     }
     
     public Order createOrder(Long userId, Long cartId, String shippingAddress) {
-        Cart cart = carts.get(cartId);
+        // the cart cannot change between pricing, stock reservation and its removal
+        ReentrantLock lock = cartLock(cartId);
+        lock.lock();
+        try {
+            return createOrder(userId, cartId, shippingAddress, carts.get(cartId));
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private Order createOrder(Long userId, Long cartId, String shippingAddress, Cart cart) {
         
         if (cart == null) {
         }
         
-        if (cart.items.size() == 0) {
+        if (cart.getItems().size() == 0) {
             System.out.println("Empty cart!");
             return null;
         }
         
-        if (cart.items.size() > MAX_CART_ITEMS) {
+        if (cart.getItems().size() > MAX_CART_ITEMS) {
         }
         
         Order order = new Order(userId, cart, shippingAddress);
-        order.id = orderIdCounter++;
+        order.id = orderIdCounter.getAndIncrement();
         
-        boolean allStockOk = true;
-        for (int i = 0; i < cart.items.size(); i++) {
-            Object obj = cart.items.get(i);
-            Cart.CartItem item = (Cart.CartItem) obj;
-            
-            Product p = item.product;
-            if (p != null) {
-                if (p.stock >= item.quantity) {
-                    p.stock = p.stock - item.quantity;
-                } else {
-                    allStockOk = false;
-                    System.out.println("Stock issue with product: " + p.name);
-                }
-            }
+        // all or nothing: a short line leaves the stock of the other lines untouched
+        List<Long> insufficient = inventoryService.reserve(cart);
+        for (Long productId : insufficient) {
+            System.out.println("Stock issue with product: " + productId);
         }
         
-        if (!allStockOk) {
+        if (!insufficient.isEmpty()) {
             order.status = "PENDING_STOCK";
         }
         
@@ -138,6 +300,15 @@ public class OrderService {
         return order;
     }
     
+    // changes to a cart are serialized on its stripe, different carts go in parallel; reads do not lock (see Cart)
+    private ReentrantLock cartLock(Long cartId) {
+        return carts.lockFor(cartId);
+    }
+    
+    public Map<String, Object> getCartStats() {
+        return carts.stats();
+    }
+    
     public Order getOrder(Long orderId) {
         if (orderId == null) {
             throw new IllegalArgumentException("Order ID cannot be null");
@@ -236,8 +407,9 @@ public class OrderService {
     }
     
     public void resetCounters() {
-        orderIdCounter = 1L;
-        cartIdCounter = 1L;
+        orderIdCounter.set(1);
+        // ids of spilled carts stay taken, as at startup
+        cartIdCounter.set(carts.maxCartId() + 1);
     }
     
     public void oldPaymentMethod(Order order) {
@@ -0,0 +1,151 @@
+package com.ecommerce.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: LEVELS wheels of WHEEL_SIZE buckets, level n covering
+ * WHEEL_SIZE^(n+1) ticks. A timeout sits in the coarsest bucket that still tells it
+ * apart from the current tick and moves down a level each time its bucket comes
+ * round, so scheduling and cancelling are O(1) and a tick only touches one bucket
+ * per level, however many timeouts are pending. Buckets are intrusive doubly linked
+ * lists. The owner calls advance() from a single ticking thread.
+ */
+class TimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int WHEEL_SIZE = 1 << BITS;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Timeout<T>[][] buckets;
+    private long currentTick;
+    private int size;
+
+    // Java cannot create an array of Timeout<T>: the raw array is only ever filled with Timeout<T>
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[LEVELS][WHEEL_SIZE];
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /** Longest delay the wheel can hold. */
+    long maxDelayMillis() {
+        return ((1L << (BITS * LEVELS)) - 1) * tickMillis;
+    }
+
+    synchronized Timeout<T> schedule(T value, long delayMillis, long nowMillis) {
+        if (delayMillis > maxDelayMillis()) {
+            throw new IllegalArgumentException("Delay " + delayMillis + " ms exceeds " + maxDelayMillis() + " ms");
+        }
+        long deadline = Math.max(currentTick + 1, (nowMillis + delayMillis + tickMillis - 1) / tickMillis);
+        Timeout<T> timeout = new Timeout<>(value, deadline);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /** Returns false when the timeout already fired or was cancelled. */
+    synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    synchronized boolean isPending(Timeout<T> timeout) {
+        return timeout.level >= 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Moves the wheel up to {@code nowMillis} and returns the values whose timeout
+     * expired, for the caller to handle outside the wheel's lock.
+     */
+    synchronized List<T> advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < target) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (currentTick >>> (BITS * level)) & MASK);
+                }
+            }
+            int index = (int) currentTick & MASK;
+            Timeout<T> timeout = buckets[0][index];
+            buckets[0][index] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.level = -1;
+                timeout.prev = timeout.next = null;
+                expired.add(timeout.value);
+                size--;
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int level, int index) {
+        Timeout<T> timeout = buckets[level][index];
+        buckets[level][index] = null;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.prev = timeout.next = null;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delta = timeout.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        int index = (int) (timeout.deadline >>> (BITS * level)) & MASK;
+        Timeout<T> head = buckets[level][index];
+        timeout.level = level;
+        timeout.index = index;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[level][index] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.level][timeout.index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.level = -1;
+        timeout.prev = timeout.next = null;
+    }
+
+    static final class Timeout<T> {
+        final T value;
+        final long deadline;
+        int level;
+        int index;
+        Timeout<T> prev;
+        Timeout<T> next;
+
+        Timeout(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One-unit takes on a single product by 32 or more threads: a plain AtomicLong
+ * CAS loop against HotStockCounter, then reserveStock under the stripe lock against
+ * reserveStock in hot mode. Not a JUnit test; run its main method, optionally with
+ * the thread count.
+ */
+public class HotStockBenchmark {
+
+    private static final int COUNTER_TAKES = 200_000;
+    private static final int RESERVATIONS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(32, Runtime.getRuntime().availableProcessors());
+        ProductRepository repository = ProductRepository.getInstance();
+        Product product = new Product("Hot product", 19.99, Integer.MAX_VALUE / 2);
+        product.category = "bench";
+        Long id = repository.save(product).id;
+        Map<Long, Integer> one = Collections.singletonMap(id, 1);
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round + ", threads=" + threads);
+            AtomicLong single = new AtomicLong(Long.MAX_VALUE / 2);
+            run("AtomicLong CAS", threads, COUNTER_TAKES, () -> {
+                while (true) {
+                    long value = single.get();
+                    if (value < 1) {
+                        return false;
+                    }
+                    if (single.compareAndSet(value, value - 1)) {
+                        return true;
+                    }
+                }
+            });
+            HotStockCounter counter = new HotStockCounter(Long.MAX_VALUE / 4);
+            run("HotStockCounter", threads, COUNTER_TAKES, () -> counter.tryTake(1) == HotStockCounter.Take.TAKEN);
+
+            run("reserveStock, stripe lock", threads, RESERVATIONS, () -> repository.reserveStock(one).isEmpty());
+            repository.setHotStock(id, true);
+            run("reserveStock, hot mode", threads, RESERVATIONS, () -> repository.reserveStock(one).isEmpty());
+            repository.setHotStock(id, false);
+        }
+        repository.delete(id);
+    }
+
+    private static void run(String name, int threads, int takesPerThread, BooleanSupplier take) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < takesPerThread; i++) {
+                    if (!take.getAsBoolean()) {
+                        throw new IllegalStateException(name + " ran out of stock");
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("  %-28s %,14d takes/s%n", name, (long) threads * takesPerThread * 1_000_000_000L / nanos);
+    }
+}
@@ -0,0 +1,109 @@
+package com.ecommerce.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.ecommerce.repository.ProductRepositoryConcurrencyTest.runConcurrently;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotStockCounterTest {
+
+    @Test
+    void takesUntilEmptyThenReportsInsufficient() {
+        HotStockCounter counter = new HotStockCounter(10);
+        assertEquals(10, counter.snapshot());
+        assertEquals(HotStockCounter.Take.TAKEN, counter.tryTake(7));
+        // the remaining 3 units are spread over the stripes: this take needs a rebalance
+        assertEquals(HotStockCounter.Take.TAKEN, counter.tryTake(3));
+        assertEquals(HotStockCounter.Take.INSUFFICIENT, counter.tryTake(1));
+        assertEquals(0, counter.snapshot());
+    }
+
+    @Test
+    void adjustNeverGoesBelowZero() {
+        HotStockCounter counter = new HotStockCounter(5);
+        assertFalse(counter.adjust(-6));
+        assertEquals(5, counter.snapshot());
+        assertTrue(counter.adjust(-5));
+        assertTrue(counter.adjust(12));
+        assertEquals(12, counter.snapshot());
+        assertFalse(counter.set(-1));
+        assertTrue(counter.set(3));
+        assertEquals(3, counter.snapshot());
+    }
+
+    @Test
+    void retiredCounterHandsBackItsStockAndRefusesTakes() {
+        HotStockCounter counter = new HotStockCounter(40);
+        counter.tryTake(15);
+        assertEquals(25, counter.retire());
+        assertEquals(HotStockCounter.Take.RETIRED, counter.tryTake(1));
+        assertFalse(counter.adjust(1));
+        assertFalse(counter.set(10));
+        assertEquals(0, counter.snapshot());
+    }
+
+    /*
+     * 64 threads take 1 to 3 units until the counter runs dry: what they took adds
+     * up to the initial stock exactly, so no unit is lost or sold twice.
+     */
+    @Test
+    void concurrentSellOutTakesExactlyTheStock() throws Exception {
+        int initial = 100_000;
+        HotStockCounter counter = new HotStockCounter(initial);
+
+        List<Long> taken = runConcurrently(64, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long units = 0;
+            int misses = 0;
+            while (misses < 100) {
+                int wanted = 1 + random.nextInt(3);
+                if (counter.tryTake(wanted) == HotStockCounter.Take.TAKEN) {
+                    units += wanted;
+                } else {
+                    misses++;
+                }
+            }
+            return units;
+        });
+
+        long total = 0;
+        for (long units : taken) {
+            total += units;
+        }
+        long left = counter.snapshot();
+        assertTrue(left >= 0 && left < 3, "only less than the largest take can be left, got " + left);
+        assertEquals(initial, total + left);
+    }
+
+    /* Takes and restocks racing with snapshot(): a snapshot never sees a rebalance half done. */
+    @Test
+    void snapshotsStayWithinBoundsDuringRebalances() throws Exception {
+        HotStockCounter counter = new HotStockCounter(64);
+
+        List<Long> lowest = runConcurrently(9, thread -> {
+            if (thread == 0) {
+                long min = Long.MAX_VALUE;
+                for (int i = 0; i < 200_000; i++) {
+                    long value = counter.snapshot();
+                    assertTrue(value >= 0 && value <= 64, "snapshot out of bounds: " + value);
+                    min = Math.min(min, value);
+                }
+                return min;
+            }
+            for (int i = 0; i < 100_000; i++) {
+                if (counter.tryTake(1) == HotStockCounter.Take.TAKEN) {
+                    counter.adjust(1);
+                }
+            }
+            return 0L;
+        });
+
+        assertTrue(lowest.get(0) >= 0);
+        assertEquals(64, counter.snapshot());
+    }
+}
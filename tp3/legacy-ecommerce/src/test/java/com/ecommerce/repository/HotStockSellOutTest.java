@@ -0,0 +1,130 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.ecommerce.repository.ProductRepositoryConcurrencyTest.runConcurrently;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A hot product sold out by 64 threads through ProductRepository, alone and in
+ * carts with a regular product, while it is switched in and out of hot mode.
+ */
+class HotStockSellOutTest {
+
+    private static final int THREADS = 64;
+
+    private final ProductRepository repository = ProductRepository.getInstance();
+    private final List<Long> ids = new ArrayList<>();
+
+    @AfterEach
+    void deleteCreatedProducts() {
+        for (Long id : ids) {
+            repository.delete(id);
+        }
+    }
+
+    @Test
+    void hotProductSellsOutExactly() throws Exception {
+        Long hot = create("hot", 20_000);
+        assertTrue(repository.setHotStock(hot, true));
+
+        List<Long> sold = runConcurrently(THREADS, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long units = 0;
+            int misses = 0;
+            while (misses < 50) {
+                int wanted = 1 + random.nextInt(3);
+                if (repository.decrementStock(hot, wanted)) {
+                    units += wanted;
+                } else {
+                    misses++;
+                }
+            }
+            return units;
+        });
+
+        assertTrue(repository.setHotStock(hot, false));
+        assertFalse(repository.isHotStock(hot));
+        int left = repository.findById(hot).stock;
+        assertTrue(left >= 0 && left < 3, "left " + left);
+        assertEquals(20_000, sum(sold) + left);
+    }
+
+    /*
+     * Carts take one unit of the hot product and one of a regular product that runs
+     * out first: once it has, every cart fails and must give its hot unit back.
+     * Meanwhile one thread keeps switching hot mode on and off.
+     */
+    @Test
+    void failedCartsGiveHotUnitsBackWhileModeFlips() throws Exception {
+        Long hot = create("hot", 50_000);
+        Long cold = create("cold", 5_000);
+        repository.setHotStock(hot, true);
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        cart.put(hot, 1);
+        cart.put(cold, 1);
+
+        List<Long> sold = runConcurrently(THREADS, thread -> {
+            long carts = 0;
+            for (int i = 0; i < 200; i++) {
+                if (thread == 0) {
+                    repository.setHotStock(hot, i % 2 == 1);
+                    continue;
+                }
+                if (repository.reserveStock(cart).isEmpty()) {
+                    carts++;
+                }
+            }
+            return carts;
+        });
+
+        repository.setHotStock(hot, false);
+        long carts = sum(sold);
+        assertEquals(5_000, carts, "the regular product sells out");
+        assertEquals(0, repository.findById(cold).stock);
+        assertEquals(50_000 - carts, repository.findById(hot).stock);
+    }
+
+    @Test
+    void holdsOnAHotProductAreReleasedIntoItsCounter() {
+        Long hot = create("hot", 100);
+        repository.setHotStock(hot, true);
+        Map<Long, Integer> line = Collections.singletonMap(hot, 30);
+
+        assertEquals(Collections.emptyList(), repository.holdStock(line));
+        assertEquals(30, repository.getHeldUnits(hot));
+        assertEquals(Collections.singletonList(hot), repository.holdStock(Collections.singletonMap(hot, 71)));
+        repository.releaseHeld(line);
+        assertEquals(0, repository.getHeldUnits(hot));
+
+        repository.setHotStock(hot, false);
+        assertEquals(100, repository.findById(hot).stock);
+    }
+
+    private Long create(String name, int stock) {
+        Product product = new Product(name, 49.0, stock);
+        product.category = "test-hot-stock";
+        Long id = repository.save(product).id;
+        ids.add(id);
+        return id;
+    }
+
+    private static long sum(List<Long> values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WAL write throughput with 1 to 64 writers (each waits for its own fsync, so more
+ * writers means bigger group commits), then the time to recover the log written.
+ * Not a JUnit test; run its main method, optionally with the directory to use.
+ */
+public class ProductPersistenceBenchmark {
+
+    private static final int RECORDS_PER_RUN = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("wal-bench");
+        System.out.println("directory=" + directory);
+        long id = 1;
+        try (ProductPersistence persistence = new ProductPersistence(directory, 64L << 20, product -> 0)) {
+            persistence.recover(new Discard());
+            for (int writers = 1; writers <= 64; writers *= 4) {
+                id = run(persistence, writers, id);
+            }
+        }
+
+        long start = System.nanoTime();
+        Discard discard = new Discard();
+        try (ProductPersistence persistence = new ProductPersistence(directory, 64L << 20, product -> 0)) {
+            persistence.recover(discard);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("recovered %,d records in %d ms%n", discard.restored, millis);
+    }
+
+    private static long run(ProductPersistence persistence, int writers, long firstId) throws InterruptedException {
+        int perWriter = RECORDS_PER_RUN / writers;
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int w = 0; w < writers; w++) {
+            long base = firstId + (long) w * perWriter;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    Product product = new Product("Product " + (base + i), 19.99, 100);
+                    product.id = base + i;
+                    product.category = "Bench";
+                    persistence.productSaved(product);
+                    persistence.awaitPendingWrites();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("writers=%-3d %,10d durable writes/s%n", writers, (long) perWriter * writers * 1_000_000_000L / nanos);
+        return firstId + (long) perWriter * writers;
+    }
+
+    private static class Discard implements ProductPersistence.RecoveryTarget {
+        long restored;
+
+        @Override
+        public void restore(List<Product> batch) {
+            restored += batch.size();
+        }
+
+        @Override
+        public void remove(Long id) {
+            restored++;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductPersistenceTest {
+
+    private static final long SEGMENT_BYTES = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void emptyDirectoryRecoversNothing() throws IOException {
+        Catalog catalog = new Catalog();
+        try (ProductPersistence persistence = open(catalog)) {
+            assertEquals(0, persistence.lastSequence());
+        }
+        assertTrue(catalog.products.isEmpty());
+    }
+
+    @Test
+    void savesAndDeletesAreReplayedAfterARestart() throws IOException {
+        try (ProductPersistence persistence = open(new Catalog())) {
+            Product mouse = product(1, "Mouse", 29.99, 50);
+            write(persistence, mouse);
+            write(persistence, product(2, "Keyboard", 79.99, 30));
+            write(persistence, product(3, "Monitor", 399.99, 15));
+            mouse.stock = 42;
+            write(persistence, mouse);
+            delete(persistence, 3);
+        }
+
+        Catalog recovered = new Catalog();
+        try (ProductPersistence persistence = open(recovered)) {
+            assertEquals(5, persistence.lastSequence());
+        }
+        assertEquals(2, recovered.products.size());
+        assertProduct(recovered.products.get(1L), "Mouse", 29.99, 42);
+        assertProduct(recovered.products.get(2L), "Keyboard", 79.99, 30);
+        assertNull(recovered.products.get(3L));
+    }
+
+    @Test
+    void snapshotDropsCoveredSegmentsAndTheTailIsReplayed() throws IOException {
+        Catalog live = new Catalog();
+        try (ProductPersistence persistence = open(live)) {
+            for (long id = 1; id <= 100; id++) {
+                write(persistence, product(id, "Product " + id, id, (int) id));
+                live.products.put(id, product(id, "Product " + id, id, (int) id));
+            }
+            int segmentsBefore = files("wal-");
+            assertTrue(segmentsBefore > 2, "expected the log to roll over, got " + segmentsBefore + " segments");
+
+            long seq = persistence.lastSequence();
+            persistence.snapshot(() -> new ProductPersistence.State(seq, new ArrayList<>(live.products.values())));
+            assertEquals(1, files("snapshot-"));
+            assertTrue(files("wal-") < segmentsBefore, "covered segments are deleted");
+
+            // tail after the snapshot
+            write(persistence, product(7, "Product 7", 7, 700));
+            delete(persistence, 8);
+        }
+
+        Catalog recovered = new Catalog();
+        try (ProductPersistence persistence = open(recovered)) {
+            assertEquals(102, persistence.lastSequence());
+        }
+        assertEquals(99, recovered.products.size());
+        assertProduct(recovered.products.get(7L), "Product 7", 7, 700);
+        assertNull(recovered.products.get(8L));
+        assertProduct(recovered.products.get(100L), "Product 100", 100, 100);
+    }
+
+    @Test
+    void tornTailIsCutOffAndLoggingResumes() throws IOException {
+        try (ProductPersistence persistence = open(new Catalog())) {
+            write(persistence, product(1, "Mouse", 29.99, 50));
+            write(persistence, product(2, "Keyboard", 79.99, 30));
+        }
+        // crash in the middle of the last record
+        Path last = lastSegment();
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        Catalog recovered = new Catalog();
+        try (ProductPersistence persistence = open(recovered)) {
+            assertEquals(1, persistence.lastSequence());
+            write(persistence, product(3, "Monitor", 399.99, 15));
+        }
+        assertEquals(1, recovered.products.size());
+
+        Catalog again = new Catalog();
+        try (ProductPersistence persistence = open(again)) {
+            assertEquals(2, persistence.lastSequence());
+        }
+        assertProduct(again.products.get(1L), "Mouse", 29.99, 50);
+        assertNull(again.products.get(2L));
+        assertProduct(again.products.get(3L), "Monitor", 399.99, 15);
+    }
+
+    @Test
+    void heldUnitsAreLoggedAsStock() throws IOException {
+        try (ProductPersistence persistence = new ProductPersistence(directory, SEGMENT_BYTES, id -> id == 1L ? 5 : 0)) {
+            persistence.recover(new Catalog());
+            write(persistence, product(1, "Mouse", 29.99, 45));
+            write(persistence, product(2, "Keyboard", 79.99, 30));
+        }
+
+        Catalog recovered = new Catalog();
+        open(recovered).close();
+        assertEquals(50, recovered.products.get(1L).stock);
+        assertEquals(30, recovered.products.get(2L).stock);
+    }
+
+    private ProductPersistence open(Catalog target) throws IOException {
+        ProductPersistence persistence = new ProductPersistence(directory, SEGMENT_BYTES, id -> 0);
+        persistence.recover(target);
+        return persistence;
+    }
+
+    private static void write(ProductPersistence persistence, Product product) {
+        persistence.productSaved(product);
+        persistence.awaitPendingWrites();
+    }
+
+    private static void delete(ProductPersistence persistence, long id) {
+        persistence.productDeleted(product(id, null, 0, 0));
+        persistence.awaitPendingWrites();
+    }
+
+    private static Product product(long id, String name, double price, int stock) {
+        Product product = new Product(name, price, stock);
+        product.id = id;
+        product.category = "Electronics";
+        return product;
+    }
+
+    private static void assertProduct(Product product, String name, double price, int stock) {
+        assertEquals(name, product.name);
+        assertEquals(price, product.price, 0.0);
+        assertEquals(stock, product.stock);
+        assertEquals("Electronics", product.category);
+    }
+
+    private int files(String prefix) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+        segments.sort(null);
+        return segments.get(segments.size() - 1);
+    }
+
+    private static class Catalog implements ProductPersistence.RecoveryTarget {
+        final Map<Long, Product> products = new TreeMap<>();
+
+        @Override
+        public void restore(List<Product> batch) {
+            for (Product product : batch) {
+                products.put(product.id, product);
+            }
+        }
+
+        @Override
+        public void remove(Long id) {
+            products.remove(id);
+        }
+    }
+}
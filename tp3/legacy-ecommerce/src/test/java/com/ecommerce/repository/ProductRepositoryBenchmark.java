@@ -0,0 +1,71 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark: threads doing a mix of findById, decrementStock and save
+ * over a shared catalog, for 1, 2, 4... up to twice the core count. Throughput
+ * should grow with the thread count until the cores are busy. Not a JUnit test;
+ * run its main method, e.g. from the IDE.
+ */
+public class ProductRepositoryBenchmark {
+
+    private static final int PRODUCTS = 10_000;
+    private static final long RUN_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        ProductRepository repository = ProductRepository.getInstance();
+        long[] ids = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product("bench-" + i, 10 + i % 90, Integer.MAX_VALUE / 2);
+            product.category = "bench";
+            ids[i] = repository.save(product).id;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores=" + cores);
+        for (int threads = 1; threads < 2 * cores; threads *= 2) {
+            run(repository, ids, threads);
+        }
+        run(repository, ids, 2 * cores);
+    }
+
+    /* 80% reads, 15% stock decrements, 5% saves. */
+    private static void run(ProductRepository repository, long[] ids, int threads) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while ((done & 1023) != 0 || System.currentTimeMillis() < deadline) {
+                    Long id = ids[random.nextInt(ids.length)];
+                    int op = random.nextInt(100);
+                    if (op < 80) {
+                        repository.findById(id);
+                    } else if (op < 95) {
+                        repository.decrementStock(id, 1);
+                    } else {
+                        Product product = repository.findById(id).copy();
+                        product.price = 10 + random.nextInt(90);
+                        repository.save(product);
+                    }
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("threads=%-3d %,12d ops/s%n", threads, operations.sum() * 1000 / RUN_MILLIS);
+    }
+}
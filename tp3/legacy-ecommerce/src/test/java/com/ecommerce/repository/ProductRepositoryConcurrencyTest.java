@@ -0,0 +1,226 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The repository is a process-wide singleton: every test works in a category of
+ * its own and deletes what it created.
+ */
+class ProductRepositoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    private final ProductRepository repository = ProductRepository.getInstance();
+    private final String category = "test-" + UUID.randomUUID();
+
+    @AfterEach
+    void deleteCreatedProducts() {
+        for (Product product : repository.findByCategory(category)) {
+            repository.delete(product.id);
+        }
+    }
+
+    @Test
+    void concurrentSavesAreAllKept() throws Exception {
+        int perThread = 500;
+        List<Set<Long>> ids = runConcurrently(THREADS, thread -> {
+            Set<Long> saved = new HashSet<>();
+            for (int i = 0; i < perThread; i++) {
+                saved.add(repository.save(newProduct("p" + thread + "-" + i, 10)).id);
+            }
+            return saved;
+        });
+
+        Set<Long> allIds = new HashSet<>();
+        for (Set<Long> saved : ids) {
+            allIds.addAll(saved);
+        }
+        assertEquals(THREADS * perThread, allIds.size(), "distinct ids handed out");
+        List<Product> found = repository.findByCategory(category);
+        assertEquals(THREADS * perThread, found.size());
+        for (Product product : found) {
+            assertTrue(allIds.contains(product.id));
+            assertEquals(product.name, repository.findById(product.id).name);
+        }
+    }
+
+    @Test
+    void concurrentDecrementsAreNotLost() throws Exception {
+        int perThread = 500;
+        Product product = repository.save(newProduct("contended", THREADS * perThread + 100));
+
+        List<Integer> failures = runConcurrently(THREADS, thread -> {
+            int failed = 0;
+            for (int i = 0; i < perThread; i++) {
+                if (!repository.decrementStock(product.id, 1)) {
+                    failed++;
+                }
+            }
+            return failed;
+        });
+
+        for (int failed : failures) {
+            assertEquals(0, failed);
+        }
+        assertEquals(100, repository.findById(product.id).stock);
+        assertFalse(repository.decrementStock(product.id, 101), "cannot take more than what is left");
+        assertEquals(100, repository.findById(product.id).stock);
+    }
+
+    /*
+     * The writer always saves the next product before deleting the previous one, so
+     * at every point in time the category holds one or two products. A read that is
+     * not a point-in-time view can miss both (pass the new one's slot before it is
+     * inserted, reach the old one's after it is deleted).
+     */
+    @Test
+    void readsSeeAPointInTimeView() throws Exception {
+        Product first = repository.save(newProduct("chain-0", 1));
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        try {
+            Future<?> writer = pool.submit(() -> {
+                Product previous = first;
+                for (int i = 1; i <= 5000; i++) {
+                    Product next = repository.save(newProduct("chain-" + i, 1));
+                    repository.delete(previous.id);
+                    previous = next;
+                }
+                stop.set(true);
+                return null;
+            });
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                boolean byCategory = r % 2 == 0;
+                readers.add(pool.submit(() -> {
+                    int reads = 0;
+                    do {
+                        List<Product> seen = byCategory ? repository.findByCategory(category) : inCategory(repository.findAll());
+                        Set<Long> distinct = new HashSet<>();
+                        for (Product product : seen) {
+                            assertTrue(distinct.add(product.id), "product listed twice");
+                            assertEquals(category, product.category);
+                        }
+                        assertTrue(seen.size() >= 1 && seen.size() <= 2, "saw " + seen.size() + " products");
+                        reads++;
+                    } while (!stop.get());
+                    return reads;
+                }));
+            }
+            writer.get(60, TimeUnit.SECONDS);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            stop.set(true);
+            pool.shutdownNow();
+        }
+        assertEquals(1, repository.findByCategory(category).size());
+    }
+
+    /*
+     * Writers keep reserving one unit of two products together, enough of them that
+     * reads regularly fall back from the optimistic path. Every view shows both at
+     * the same stock, and the instances it holds never change afterwards.
+     */
+    @Test
+    void viewsStayConsistentAndUnchangedUnderConstantWrites() throws Exception {
+        int units = 1_000_000_000;
+        Long left = repository.save(newProduct("pair-left", units)).id;
+        Long right = repository.save(newProduct("pair-right", units)).id;
+        Map<Long, Integer> pair = new HashMap<>();
+        pair.put(left, 1);
+        pair.put(right, 1);
+        AtomicBoolean stop = new AtomicBoolean();
+
+        List<Integer> reads = runConcurrently(8, thread -> {
+            if (thread > 1) {
+                while (!stop.get() && repository.reserveStock(pair).isEmpty()) {
+                    // keep writing
+                }
+                return 0;
+            }
+            int count = 0;
+            for (; count < 200; count++) {
+                List<Product> view = inCategory(repository.findAll());
+                assertEquals(2, view.size());
+                int stock = view.get(0).stock;
+                assertEquals(stock, view.get(1).stock, "torn view");
+                Thread.sleep(1);
+                assertEquals(stock, view.get(0).stock, "stored product changed in place");
+                assertEquals(stock, view.get(1).stock, "stored product changed in place");
+            }
+            stop.set(true);
+            return count;
+        });
+
+        assertEquals(200, (int) reads.get(0));
+        assertEquals(repository.findById(left).stock, repository.findById(right).stock);
+    }
+
+    private List<Product> inCategory(List<Product> products) {
+        List<Product> result = new ArrayList<>();
+        for (Product product : products) {
+            if (category.equals(product.category)) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+
+    private Product newProduct(String name, int stock) {
+        Product product = new Product(name, 9.99, stock);
+        product.category = category;
+        return product;
+    }
+
+    interface Task<T> {
+        T run(int thread) throws Exception;
+    }
+
+    /* Starts every thread on the same signal, then returns the results in thread order. */
+    static <T> List<T> runConcurrently(int threads, Task<T> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                Callable<T> call = () -> {
+                    start.await();
+                    return task.run(thread);
+                };
+                futures.add(pool.submit(call));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
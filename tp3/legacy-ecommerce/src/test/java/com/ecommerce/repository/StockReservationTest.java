@@ -0,0 +1,149 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.ecommerce.repository.ProductRepositoryConcurrencyTest.runConcurrently;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockReservationTest {
+
+    private static final int THREADS = 64;
+    private static final int PRODUCTS = 20;
+    private static final int INITIAL_STOCK = 2000;
+
+    private final ProductRepository repository = ProductRepository.getInstance();
+    private final List<Long> ids = new ArrayList<>();
+
+    @AfterEach
+    void deleteCreatedProducts() {
+        for (Long id : ids) {
+            repository.delete(id);
+        }
+    }
+
+    /*
+     * 64 threads check out random 1-4 line carts until the stock runs out: every
+     * product must end with exactly its initial stock minus what was sold, and never
+     * below zero.
+     */
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        createProducts(PRODUCTS, INITIAL_STOCK);
+        AtomicLongArray sold = new AtomicLongArray(PRODUCTS);
+        AtomicLong rejected = new AtomicLong();
+
+        runConcurrently(THREADS, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 1000; i++) {
+                Map<Long, Integer> cart = randomCart(random);
+                if (repository.reserveStock(cart).isEmpty()) {
+                    cart.forEach((id, units) -> sold.addAndGet(ids.indexOf(id), units));
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+            return null;
+        });
+
+        assertTrue(rejected.get() > 0, "the stock should have run out");
+        for (int i = 0; i < PRODUCTS; i++) {
+            int stock = repository.findById(ids.get(i)).stock;
+            assertTrue(stock >= 0, "negative stock " + stock);
+            assertEquals(INITIAL_STOCK, stock + sold.get(i), "sold + remaining for product " + i);
+        }
+    }
+
+    /*
+     * Same with cart holds in the mix: units are held, then either released or sold
+     * from the hold. Stock + held + sold stays equal to the initial stock.
+     */
+    @Test
+    void holdsReleasesAndSalesFromHoldsAreConserved() throws Exception {
+        createProducts(PRODUCTS, INITIAL_STOCK);
+        AtomicLongArray sold = new AtomicLongArray(PRODUCTS);
+
+        runConcurrently(THREADS, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 1000; i++) {
+                Map<Long, Integer> cart = randomCart(random);
+                if (!repository.holdStock(cart).isEmpty()) {
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    repository.releaseHeld(cart);
+                } else {
+                    assertEquals(Collections.emptyList(), repository.reserveStock(cart, cart), "held units are always sellable");
+                    cart.forEach((id, units) -> sold.addAndGet(ids.indexOf(id), units));
+                }
+            }
+            return null;
+        });
+
+        for (int i = 0; i < PRODUCTS; i++) {
+            Long id = ids.get(i);
+            assertEquals(0, repository.getHeldUnits(id));
+            assertEquals(INITIAL_STOCK, repository.findById(id).stock + sold.get(i), "sold + remaining for product " + i);
+        }
+    }
+
+    @Test
+    void failedReservationLeavesEveryLineUntouched() {
+        createProducts(3, 10);
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        cart.put(ids.get(0), 5);
+        cart.put(ids.get(1), 11);
+        cart.put(ids.get(2), 10);
+        cart.put(-1L, 1);
+
+        assertEquals(Arrays.asList(ids.get(1), -1L), repository.reserveStock(cart));
+        for (Long id : ids) {
+            assertEquals(10, repository.findById(id).stock);
+        }
+
+        cart.remove(-1L);
+        cart.put(ids.get(1), 10);
+        assertEquals(Collections.emptyList(), repository.reserveStock(cart));
+        assertEquals(5, repository.findById(ids.get(0)).stock);
+        assertEquals(0, repository.findById(ids.get(1)).stock);
+        assertEquals(0, repository.findById(ids.get(2)).stock);
+    }
+
+    @Test
+    void negativeOrMissingQuantitiesAreRejected() {
+        createProducts(1, 10);
+        assertThrows(IllegalArgumentException.class, () -> repository.reserveStock(Collections.singletonMap(ids.get(0), -3)));
+        assertThrows(IllegalArgumentException.class, () -> repository.reserveStock(Collections.singletonMap(ids.get(0), null)));
+        assertEquals(10, repository.findById(ids.get(0)).stock);
+    }
+
+    private Map<Long, Integer> randomCart(ThreadLocalRandom random) {
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        int lines = 1 + random.nextInt(4);
+        for (int l = 0; l < lines; l++) {
+            cart.merge(ids.get(random.nextInt(ids.size())), 1 + random.nextInt(5), Integer::sum);
+        }
+        return cart;
+    }
+
+    private void createProducts(int count, int stock) {
+        for (int i = 0; i < count; i++) {
+            Product product = new Product("reservation-" + i, 5.0, stock);
+            product.category = "test-reservations";
+            ids.add(repository.save(product).id);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Stock valuation over the facet index columns against the object walk it
+ * replaced (HashMap values, price x stock per Product). Not a JUnit test; run its
+ * main method, optionally with the catalog size.
+ */
+public class InventoryValuationBenchmark {
+
+    private static final String[] CATEGORIES = {"Books", "Electronics", "Furniture", "Games", "Garden", "Toys"};
+    private static final int WARMUP = 50;
+    private static final int RUNS = 200;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        ProductFacetIndex index = new ProductFacetIndex();
+        Map<Long, Product> products = new HashMap<>();
+        Random random = new Random(42);
+        for (long id = 1; id <= size; id++) {
+            Product product = new Product("Product " + id, 1 + random.nextInt(100_000) / 100.0, random.nextInt(500));
+            product.id = id;
+            product.category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            products.put(id, product);
+            index.productSaved(product);
+        }
+
+        double sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += index.valuation().totalValue + walk(products).totalValue;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            sink += index.valuation().totalValue;
+        }
+        long columns = (System.nanoTime() - start) / RUNS;
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            sink += walk(products).totalValue;
+        }
+        long objects = (System.nanoTime() - start) / RUNS;
+
+        System.out.printf("products=%,d columns=%.3f ms objects=%.3f ms (%s)%n",
+                size, columns / 1e6, objects / 1e6, sink > 0 ? "ok" : "?");
+    }
+
+    private static InventoryValuation walk(Map<Long, Product> products) {
+        InventoryValuation valuation = new InventoryValuation();
+        Map<String, Double> byCategory = new TreeMap<>();
+        for (Product product : products.values()) {
+            valuation.productCount++;
+            valuation.totalUnits += product.stock;
+            double value = product.price * product.stock;
+            valuation.totalValue += value;
+            byCategory.merge(product.category, value, Double::sum);
+        }
+        valuation.valueByCategory = byCategory;
+        return valuation;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ecommerce.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProductColumnsTest {
+
+    private final ProductColumns columns = new ProductColumns();
+
+    @Test
+    void releasedOrdinalsAreZeroedAndRecycled() {
+        int first = add(1L, 10.0, 5, "Books");
+        int second = add(2L, 20.0, 7, "Books");
+
+        assertEquals(Integer.valueOf(second), columns.release(2L));
+        assertNull(columns.ordinalOf(2L));
+        assertEquals(0.0, columns.prices[second], 0.0);
+        assertEquals(0, columns.stocks[second]);
+        assertEquals(ProductColumns.NO_CATEGORY, columns.categoryCodes[second]);
+        assertNull(columns.release(2L));
+
+        assertEquals(second, columns.allocate(3L), "freed ordinal is reused");
+        assertEquals(2, columns.size());
+        assertEquals(Integer.valueOf(first), columns.ordinalOf(1L));
+    }
+
+    @Test
+    void columnsGrowPastTheirInitialCapacity() {
+        for (long id = 0; id < 5000; id++) {
+            add(id, 1.5, (int) id % 10, "Category " + id % 3);
+        }
+        assertEquals(5000, columns.size());
+        assertEquals(5000 / 10 * 45, columns.totalUnits());
+        assertEquals(Integer.valueOf(4999), columns.ordinalOf(4999L));
+        assertEquals(9, columns.stocks[4999]);
+    }
+
+    @Test
+    void aggregatesSkipNothingAndCountReleasedSlotsAsZero() {
+        add(1L, 2.5, 4, "Books");
+        add(2L, 10.0, 3, "Games");
+        add(3L, 1.0, 100, null);
+        add(4L, 99.0, 50, "Books");
+        columns.release(4L);
+
+        assertEquals(107, columns.totalUnits());
+        double[] values = columns.valueByCategory();
+        assertEquals(3, values.length, "one slot per category plus uncategorized");
+        assertEquals(10.0, values[columns.existingCategoryCode("Books")], 1e-9);
+        assertEquals(30.0, values[columns.existingCategoryCode("Games")], 1e-9);
+        assertEquals(100.0, values[2], 1e-9);
+
+        // ordinal 3 was released: its stock reads 0, the caller filters it out
+        assertArrayEquals(new int[] {1, 3}, columns.stockAtMost(3));
+        assertArrayEquals(new int[] {0, 1, 3}, columns.stockAtMost(4));
+    }
+
+    private int add(Long id, double price, int stock, String category) {
+        int ordinal = columns.allocate(id);
+        columns.prices[ordinal] = price;
+        columns.stocks[ordinal] = stock;
+        if (category != null) {
+            columns.categoryCodes[ordinal] = columns.categoryCode(category);
+        }
+        return ordinal;
+    }
+}
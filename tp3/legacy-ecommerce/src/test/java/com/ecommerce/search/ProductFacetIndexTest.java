@@ -0,0 +1,116 @@
+package com.ecommerce.search;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the column-based inventory queries against a plain walk over the same
+ * products, after random saves, price and stock changes, category moves and
+ * deletes.
+ */
+class ProductFacetIndexTest {
+
+    private static final String[] CATEGORIES = {"Books", "Games", "Garden", null};
+
+    private final ProductFacetIndex index = new ProductFacetIndex();
+    private final Map<Long, Product> catalog = new HashMap<>();
+
+    @Test
+    void valuationMatchesAWalkOverTheProducts() {
+        Random random = new Random(9);
+        for (int round = 0; round < 20; round++) {
+            mutate(random, 500);
+            InventoryValuation valuation = index.valuation();
+
+            long units = 0;
+            double value = 0;
+            Map<String, Double> byCategory = new TreeMap<>();
+            for (Product product : catalog.values()) {
+                units += product.stock;
+                value += product.price * product.stock;
+                if (product.category != null) {
+                    byCategory.merge(product.category, product.price * product.stock, Double::sum);
+                }
+            }
+            assertEquals(catalog.size(), valuation.productCount);
+            assertEquals(units, valuation.totalUnits);
+            assertEquals(value, valuation.totalValue, 1e-6 * Math.max(1, value));
+            assertEquals(byCategory.keySet(), valuation.valueByCategory.keySet());
+            for (Map.Entry<String, Double> category : byCategory.entrySet()) {
+                assertEquals(category.getValue(), valuation.valueByCategory.get(category.getKey()), 1e-6 * Math.max(1, category.getValue()));
+            }
+        }
+    }
+
+    @Test
+    void lowStockMatchesAWalkOverTheProducts() {
+        Random random = new Random(18);
+        for (int round = 0; round < 20; round++) {
+            mutate(random, 500);
+            int threshold = random.nextInt(20);
+            int limit = 1 + random.nextInt(50);
+
+            List<Product> expected = new ArrayList<>();
+            for (Product product : catalog.values()) {
+                if (product.stock <= threshold) {
+                    expected.add(product);
+                }
+            }
+            expected.sort(Comparator.comparingInt((Product p) -> p.stock).thenComparingLong(p -> p.id));
+            List<Long> expectedIds = new ArrayList<>();
+            for (int i = 0; i < expected.size() && i < limit; i++) {
+                expectedIds.add(expected.get(i).id);
+            }
+            assertEquals(expectedIds, index.lowStock(threshold, limit));
+        }
+    }
+
+    @Test
+    void deletedProductsLeaveNoTrace() {
+        index.productSaved(product(1L, 10.0, 0, "Books"));
+        index.productSaved(product(2L, 20.0, 3, "Books"));
+        index.productDeleted(product(1L, 10.0, 0, "Books"));
+        index.productDeleted(product(2L, 20.0, 3, "Books"));
+
+        InventoryValuation valuation = index.valuation();
+        assertEquals(0, valuation.productCount);
+        assertEquals(0, valuation.totalUnits);
+        assertEquals(0.0, valuation.totalValue, 0.0);
+        assertTrue(valuation.valueByCategory.isEmpty(), "empty categories are not listed");
+        assertTrue(index.lowStock(100, 10).isEmpty());
+    }
+
+    private void mutate(Random random, int operations) {
+        for (int i = 0; i < operations; i++) {
+            long id = 1 + random.nextInt(300);
+            Product existing = catalog.get(id);
+            if (existing != null && random.nextInt(5) == 0) {
+                catalog.remove(id);
+                index.productDeleted(existing);
+                continue;
+            }
+            Product product = product(id, 1 + random.nextInt(10_000) / 100.0, random.nextInt(40),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            catalog.put(id, product);
+            index.productSaved(product);
+        }
+    }
+
+    private static Product product(Long id, double price, int stock, String category) {
+        Product product = new Product("Product " + id, price, stock);
+        product.id = id;
+        product.category = category;
+        return product;
+    }
+}
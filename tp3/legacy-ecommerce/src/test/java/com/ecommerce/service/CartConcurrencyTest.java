@@ -0,0 +1,193 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test of the per-cart single-writer model: a few hot carts hammered by
+ * every writer and many cold ones, while readers walk the hot carts without
+ * locking.
+ */
+class CartConcurrencyTest {
+
+    private static final int HOT_CARTS = 4;
+    private static final int COLD_CARTS = 1000;
+    private static final int WRITERS = 16;
+    private static final int READERS = 4;
+    private static final int OPERATIONS_PER_WRITER = 5000;
+
+    private final ProductRepository repository = ProductRepository.getInstance();
+    private final OrderService orderService = OrderService.getInstance();
+    private Long first;
+    private Long second;
+    private Long third;
+
+    @BeforeEach
+    void createProducts() {
+        first = save("cart-first", 2.50);
+        second = save("cart-second", 4.00);
+        third = save("cart-third", 1.25);
+    }
+
+    @AfterEach
+    void deleteProducts() {
+        repository.delete(first);
+        repository.delete(second);
+        repository.delete(third);
+    }
+
+    /*
+     * Hot carts only change through two-line batches adding one unit of each product,
+     * so any snapshot a reader sees has the same quantity on both lines. At the end
+     * every cart holds exactly the units its successful writes added.
+     */
+    @Test
+    void hotAndColdCartsKeepEveryWriteAndReadersNeverSeeHalfABatch() throws Exception {
+        Cart[] carts = new Cart[HOT_CARTS + COLD_CARTS];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = orderService.createCart((long) i);
+        }
+        AtomicLongArray added = new AtomicLongArray(carts.length);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<CartOperation> pair = Arrays.asList(
+                new CartOperation(CartOperation.ADD, first, 1),
+                new CartOperation(CartOperation.ADD, second, 1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(pool.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long reads = 0;
+                    do {
+                        Cart cart = carts[random.nextInt(HOT_CARTS)];
+                        int firstUnits = 0;
+                        int secondUnits = 0;
+                        for (Cart.CartItem item : cart.getItems()) {
+                            if (item.product.id.equals(first)) {
+                                firstUnits = item.quantity;
+                            } else if (item.product.id.equals(second)) {
+                                secondUnits = item.quantity;
+                            }
+                        }
+                        assertEquals(firstUnits, secondUnits, "torn read of cart " + cart.id);
+                        reads++;
+                    } while (writing.get());
+                    return reads;
+                }));
+            }
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_WRITER; i++) {
+                        if (random.nextInt(4) == 0) {
+                            int hot = random.nextInt(HOT_CARTS);
+                            CartUpdateResult result = orderService.updateCart(carts[hot].id, pair);
+                            assertTrue(result.applied, result.status);
+                            added.addAndGet(hot, 2);
+                        } else {
+                            int cold = HOT_CARTS + random.nextInt(COLD_CARTS);
+                            assertTrue(orderService.addToCart(carts[cold].id, third, 1));
+                            added.incrementAndGet(cold);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(120, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<Long> reader : readers) {
+                assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            writing.set(false);
+            pool.shutdownNow();
+        }
+
+        for (int i = 0; i < carts.length; i++) {
+            Cart cart = orderService.getCart(carts[i].id);
+            assertEquals(added.get(i), cart.getTotalItems(), "units in cart " + i);
+            assertTotalsMatchLines(cart);
+        }
+    }
+
+    /* Adds and removes racing on one cart: whatever the interleaving, totals match the lines. */
+    @Test
+    void totalsFollowTheLinesUnderConcurrentAddsAndRemoves() throws Exception {
+        Cart cart = orderService.createCart(-1L);
+        Long[] products = {first, second, third};
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2000; i++) {
+                        Long product = products[random.nextInt(products.length)];
+                        if (random.nextInt(3) == 0) {
+                            orderService.removeFromCart(cart.id, product);
+                        } else {
+                            orderService.addToCart(cart.id, product, 1 + random.nextInt(3));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(120, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTotalsMatchLines(orderService.getCart(cart.id));
+    }
+
+    private static void assertTotalsMatchLines(Cart cart) {
+        int units = 0;
+        double total = 0;
+        for (Cart.CartItem item : cart.getItems()) {
+            assertTrue(item.quantity > 0);
+            units += item.quantity;
+            total += item.getSubtotal();
+        }
+        assertEquals(units, cart.getTotalItems(), "units of cart " + cart.id);
+        assertEquals(total, cart.getTotal(), 1e-6, "total of cart " + cart.id);
+    }
+
+    private Long save(String name, double price) {
+        Product product = new Product(name, price, 1_000_000);
+        product.category = "test-carts";
+        return repository.save(product).id;
+    }
+}